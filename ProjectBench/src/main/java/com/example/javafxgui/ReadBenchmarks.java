@@ -0,0 +1,94 @@
+package com.example.javafxgui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The lookups behind the events menu: the bells and the default schedule of a date, the roster of a lesson,
+// the groups that can be added to it, and the quarter averages of a class and of a single pupil.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmarks {
+
+    @Benchmark
+    public int bellsSchedule(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.Lesson lesson = cursor.pick(bench.lessons);
+        return bench.db.query(conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT * FROM get_bells_schedule(?)")) {
+                st.setDate(1, Date.valueOf(lesson.date()));
+                return count(st.executeQuery());
+            }
+        });
+    }
+
+    @Benchmark
+    public List<Integer> schedule(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.Lesson lesson = cursor.pick(bench.lessons);
+        return bench.events.scheduledTeachers(lesson.date(), 1 + lesson.eventId() % 6);
+    }
+
+    @Benchmark
+    public List<EventsRepository.RosterEntry> roster(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.Lesson lesson = cursor.pick(bench.lessons);
+        return bench.events.roster(lesson.eventId(), lesson.groups());
+    }
+
+    @Benchmark
+    public List<Integer> availableGroups(SchoolBench bench, SchoolBench.Cursor cursor) {
+        return bench.events.availableGroups(cursor.pick(bench.lessons).eventId());
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> availableGroupsOfDay(SchoolBench bench, SchoolBench.Cursor cursor) {
+        return bench.events.availableGroupsOfDay(cursor.pick(bench.lessons).eventId());
+    }
+
+    @Benchmark
+    public int classQuarterMarks(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.ClassQuarter quarter = cursor.pick(bench.classQuarters);
+        return bench.db.query(conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT * FROM get_marks_in_quarter(?, ?)")) {
+                st.setInt(1, quarter.classId());
+                st.setInt(2, quarter.quarterId());
+                return count(st.executeQuery());
+            }
+        });
+    }
+
+    @Benchmark
+    public double pupilQuarterMark(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.PupilQuarter quarter = cursor.pick(bench.pupilQuarters);
+        return bench.db.query(conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT get_mark_in_quarter(?, ?, ?)")) {
+                st.setInt(1, quarter.pupilId());
+                st.setInt(2, quarter.subjectId());
+                st.setInt(3, quarter.quarterId());
+                ResultSet res = st.executeQuery();
+                res.next();
+                return res.getDouble(1);
+            }
+        });
+    }
+
+    private static int count(ResultSet res) throws SQLException {
+        int rows = 0;
+        while (res.next())
+            rows++;
+        return rows;
+    }
+}
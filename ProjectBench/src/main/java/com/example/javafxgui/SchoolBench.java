@@ -0,0 +1,198 @@
+package com.example.javafxgui;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The database the benchmarks run against, created from create.sql on first use and reused while create.sql stays
+// the same (its hash is kept as the comment of the database, a changed schema rebuilds it):
+//   school.bench.url       jdbc:postgresql://localhost:5432/school_bench, or school_bench_<N>p_<M>y when seeded
+//   school.bench.user      postgres
+//   school.bench.password  (empty)
+//   school.bench.schema    create.sql, looked up in the working directory and its parent
+//   school.bench.pupils    when set, the schema is loaded without its sample data and SchoolDataGenerator fills
+//   school.bench.years     it with that many pupils over that many school years (default 1)
+// The inputs of every benchmark are read from the data once per trial, so the operations run on real ids.
+@State(Scope.Benchmark)
+public class SchoolBench {
+
+    record Lesson(int eventId, LocalDate date, List<Integer> groups, List<Integer> pupils, Set<Integer> absent,
+                  Map<Integer, EventsRepository.Mark> marks) {
+    }
+
+    record ClassQuarter(int classId, int quarterId) {
+    }
+
+    record PupilQuarter(int pupilId, int subjectId, int quarterId) {
+    }
+
+    // Walks every thread through the inputs in turn.
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        <T> T pick(List<T> values) {
+            return values.get(Math.floorMod(next++, values.size()));
+        }
+    }
+
+    ConnectionPool pool;
+    Database db;
+    EventsRepository events;
+    final List<Lesson> lessons = new ArrayList<>();
+    final List<ClassQuarter> classQuarters = new ArrayList<>();
+    final List<PupilQuarter> pupilQuarters = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void open() throws SQLException {
+        int pupils = Integer.getInteger("school.bench.pupils", 0);
+        int years = Integer.getInteger("school.bench.years", 1);
+        String name = pupils > 0 ? "school_bench_" + pupils + "p_" + years + "y" : "school_bench";
+        String url = System.getProperty("school.bench.url", "jdbc:postgresql://localhost:5432/" + name);
+        String user = System.getProperty("school.bench.user", "postgres");
+        String password = System.getProperty("school.bench.password", "");
+        createIfStale(url, user, password, pupils > 0 ? SchoolDataGenerator.upToNow(pupils, years) : null);
+        pool = new ConnectionPool(url, user, password, 4, 2, 30_000);
+        db = new Database(pool);
+        events = new EventsRepository(db);
+        db.query(conn -> {
+            loadLessons(conn);
+            loadQuarters(conn);
+            return null;
+        });
+        if (lessons.isEmpty() || classQuarters.isEmpty() || pupilQuarters.isEmpty())
+            throw new IllegalStateException("The benchmark database " + url + " has no lessons with groups or no marks.");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        pool.close();
+    }
+
+    private void loadLessons(Connection conn) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement("SELECT e.event_id, e.event_date, array_agg(DISTINCT ge.group_id), " +
+                                                          "array_agg(DISTINCT r.pupil_id) FROM events e " +
+                                                          "JOIN groups_to_events ge ON ge.event_id = e.event_id " +
+                                                          "JOIN themes t ON t.theme_id = e.theme_id " +
+                                                          "JOIN subjects s ON s.subject_id = t.subject_id AND s.mandatory " +
+                                                          "CROSS JOIN get_pupils_from_group(ge.group_id) r " +
+                                                          "GROUP BY e.event_id, e.event_date ORDER BY e.event_date DESC, e.event_id LIMIT 500")) {
+            ResultSet res = st.executeQuery();
+            while (res.next())
+                lessons.add(new Lesson(res.getInt(1), res.getDate(2).toLocalDate(), List.of((Integer[]) res.getArray(3).getArray()),
+                        List.of((Integer[]) res.getArray(4).getArray()), new HashSet<>(), new HashMap<>()));
+        }
+        Map<Integer, Lesson> byEvent = new HashMap<>();
+        lessons.forEach(lesson -> byEvent.put(lesson.eventId(), lesson));
+        try (PreparedStatement st = conn.prepareStatement("SELECT event_id, pupil_id, mark, type_id FROM marks WHERE event_id = ANY(?)")) {
+            st.setArray(1, conn.createArrayOf("integer", byEvent.keySet().toArray()));
+            ResultSet res = st.executeQuery();
+            while (res.next())
+                byEvent.get(res.getInt(1)).marks().put(res.getInt(2), new EventsRepository.Mark(res.getInt(3), res.getInt(4)));
+        }
+        try (PreparedStatement st = conn.prepareStatement("SELECT event_id, pupil_id FROM skips WHERE event_id = ANY(?)")) {
+            st.setArray(1, conn.createArrayOf("integer", byEvent.keySet().toArray()));
+            ResultSet res = st.executeQuery();
+            while (res.next())
+                byEvent.get(res.getInt(1)).absent().add(res.getInt(2));
+        }
+    }
+
+    private void loadQuarters(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            ResultSet res = st.executeQuery("SELECT DISTINCT c.class_id, t.quarter_id FROM events e " +
+                                            "JOIN themes t ON t.theme_id = e.theme_id JOIN classes c ON c.class_id = e.class_id " +
+                                            "ORDER BY 1, 2 LIMIT 200");
+            while (res.next())
+                classQuarters.add(new ClassQuarter(res.getInt(1), res.getInt(2)));
+            res = st.executeQuery("SELECT pupil_id, subject_id, quarter_id FROM quarter_mark_totals ORDER BY pupil_id, subject_id, quarter_id LIMIT 2000");
+            while (res.next())
+                pupilQuarters.add(new PupilQuarter(res.getInt(1), res.getInt(2), res.getInt(3)));
+        }
+    }
+
+    static void createIfStale(String url, String user, String password, SchoolDataGenerator generator) throws SQLException {
+        int slash = url.lastIndexOf('/');
+        int options = url.indexOf('?', slash);
+        String name = url.substring(slash + 1, options < 0 ? url.length() : options);
+        String maintenance = url.substring(0, slash + 1) + "postgres" + (options < 0 ? "" : url.substring(options));
+        String quoted = "\"" + name.replace("\"", "\"\"") + "\"";
+        try (Connection admin = DriverManager.getConnection(maintenance, user, password);
+             PreparedStatement st = admin.prepareStatement("SELECT shobj_description(oid, 'pg_database') FROM pg_database WHERE datname = ?")) {
+            String schema = Files.readString(schemaFile());
+            String hash = "create.sql " + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(schema.getBytes(StandardCharsets.UTF_8)));
+            st.setString(1, name);
+            ResultSet res = st.executeQuery();
+            if (res.next()) {
+                if (hash.equals(res.getString(1)))
+                    return;
+                System.out.println("Rebuilding " + name + ", it was created from another create.sql.");
+                try (Statement drop = admin.createStatement()) {
+                    drop.execute("DROP DATABASE " + quoted);
+                }
+            }
+            if (generator != null)
+                schema = SchoolDataGenerator.schemaOnly(schema);
+            try (Statement create = admin.createStatement()) {
+                create.execute("CREATE DATABASE " + quoted);
+            }
+            try (Connection conn = DriverManager.getConnection(url, user, password);
+                 Statement load = conn.createStatement()) {
+                load.execute(schema);
+                if (generator != null) {
+                    try (ConnectionPool seed = new ConnectionPool(url, user, password, 1, 2, 30_000)) {
+                        generator.load(new Database(seed)).forEach(System.out::println);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                try (Statement drop = admin.createStatement()) {
+                    drop.execute("DROP DATABASE " + quoted);
+                }
+                throw e;
+            }
+            try (Statement comment = admin.createStatement()) {
+                comment.execute("COMMENT ON DATABASE " + quoted + " IS '" + hash + "'");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path schemaFile() {
+        String configured = System.getProperty("school.bench.schema");
+        if (configured != null)
+            return Path.of(configured);
+        for (Path candidate : List.of(Path.of("create.sql"), Path.of("..", "create.sql")))
+            if (Files.exists(candidate))
+                return candidate;
+        throw new IllegalStateException("create.sql not found, set school.bench.schema.");
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.javafxgui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Saving marks and skips for a handful of pupils of a lesson. Every operation writes and then restores what the
+// lesson had, so the data does not drift between iterations; the reported time covers both transactions. Marks go
+// to pupils who attended, as the marks checks require.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmarks {
+
+    private static final int PUPILS = 5;
+
+    @Benchmark
+    public void saveMarks(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.Lesson lesson = cursor.pick(bench.lessons);
+        List<Integer> pupils = lesson.pupils().stream().filter(pupil -> !lesson.absent().contains(pupil)).limit(PUPILS).toList();
+        Map<Integer, EventsRepository.Mark> marks = new HashMap<>();
+        Map<Integer, EventsRepository.Mark> restored = new HashMap<>();
+        List<Integer> unmarked = new ArrayList<>();
+        for (int pupil : pupils) {
+            marks.put(pupil, new EventsRepository.Mark(1 + pupil % 12, 1));
+            EventsRepository.Mark previous = lesson.marks().get(pupil);
+            if (previous != null)
+                restored.put(pupil, previous);
+            else
+                unmarked.add(pupil);
+        }
+        bench.events.saveMarks(lesson.eventId(), marks, List.of());
+        bench.events.saveMarks(lesson.eventId(), restored, unmarked);
+    }
+
+    @Benchmark
+    public void saveSkips(SchoolBench bench, SchoolBench.Cursor cursor) {
+        SchoolBench.Lesson lesson = cursor.pick(bench.lessons);
+        List<Integer> pupils = lesson.pupils().subList(0, Math.min(PUPILS, lesson.pupils().size()));
+        List<Integer> absent = pupils.stream().filter(lesson.absent()::contains).toList();
+        List<Integer> present = pupils.stream().filter(pupil -> !lesson.absent().contains(pupil)).toList();
+        bench.events.saveSkips(lesson.eventId(), present, absent);
+        bench.events.saveSkips(lesson.eventId(), absent, present);
+    }
+}
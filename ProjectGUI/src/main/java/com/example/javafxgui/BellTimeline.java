@@ -0,0 +1,71 @@
+package com.example.javafxgui;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+public final class BellTimeline {
+
+    record Period(LocalDate from, LocalDate to, BellsRepository.Bell bell) {
+
+        boolean contains(LocalDate date) {
+            return !date.isBefore(from) && (to == null || date.isBefore(to));
+        }
+    }
+
+    private final LocalDate[] starts;
+    private final List<List<BellsRepository.Bell>> schedules;
+
+    private BellTimeline(LocalDate[] starts, List<List<BellsRepository.Bell>> schedules) {
+        this.starts = starts;
+        this.schedules = schedules;
+    }
+
+    static BellTimeline of(List<Period> periods) {
+        TreeSet<LocalDate> bounds = new TreeSet<>();
+        for (Period period : periods) {
+            bounds.add(period.from());
+            if (period.to() != null)
+                bounds.add(period.to());
+        }
+        LocalDate[] starts = bounds.toArray(new LocalDate[0]);
+        List<List<BellsRepository.Bell>> schedules = new ArrayList<>(starts.length);
+        for (LocalDate start : starts) {
+            List<BellsRepository.Bell> bells = new ArrayList<>();
+            for (Period period : periods)
+                if (period.contains(start))
+                    bells.add(period.bell());
+            bells.sort(Comparator.comparingInt(BellsRepository.Bell::order));
+            schedules.add(List.copyOf(bells));
+        }
+        return new BellTimeline(starts, List.copyOf(schedules));
+    }
+
+    public List<BellsRepository.Bell> bellsOn(LocalDate date) {
+        int index = Arrays.binarySearch(starts, date);
+        if (index < 0)
+            index = -index - 2;
+        return index < 0 ? List.of() : schedules.get(index);
+    }
+
+    public Optional<BellsRepository.Bell> bell(LocalDate date, int order) {
+        List<BellsRepository.Bell> bells = bellsOn(date);
+        int low = 0;
+        int high = bells.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midOrder = bells.get(mid).order();
+            if (midOrder < order)
+                low = mid + 1;
+            else if (midOrder > order)
+                high = mid - 1;
+            else
+                return Optional.of(bells.get(mid));
+        }
+        return Optional.empty();
+    }
+}
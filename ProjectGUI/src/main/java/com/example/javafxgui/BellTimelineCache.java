@@ -0,0 +1,46 @@
+package com.example.javafxgui;
+
+import java.util.function.Consumer;
+
+public class BellTimelineCache {
+
+    private final BellsRepository repository;
+
+    private BellTimeline timeline;
+    private long generation;
+
+    final Consumer<ChangeFeed.TableChange> onChange = change -> {
+        if (change.table().equals("bell_schedule_history"))
+            invalidate();
+    };
+
+    public BellTimelineCache(BellsRepository repository) {
+        this.repository = repository;
+    }
+
+    public synchronized BellTimeline peek() {
+        return timeline;
+    }
+
+    public BellTimeline get() {
+        long loadedGeneration;
+        synchronized (this) {
+            if (timeline != null)
+                return timeline;
+            loadedGeneration = generation;
+        }
+        BellTimeline loaded = repository.timeline();
+        synchronized (this) {
+            if (timeline != null)
+                return timeline;
+            if (loadedGeneration == generation)
+                timeline = loaded;
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate() {
+        timeline = null;
+        generation++;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.javafxgui;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BellsRepository {
+
+    record Bell(int order, LocalTime begin, LocalTime end) {
+    }
+
+    private final Database db;
+
+    public BellsRepository(Database db) {
+        this.db = db;
+    }
+
+    BellTimeline timeline() {
+        return db.query("bells.timeline", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT bell_order, begin_time, end_time, lower(valid), upper(valid) FROM bell_schedule_history " +
+                                                                  "WHERE begin_time IS NOT NULL AND NOT isempty(valid)")) {
+                ResultSet res = st.executeQuery();
+                List<BellTimeline.Period> periods = new ArrayList<>();
+                while (res.next()) {
+                    Date to = res.getDate(5);
+                    periods.add(new BellTimeline.Period(res.getDate(4).toLocalDate(), to == null ? null : to.toLocalDate(),
+                            new Bell(res.getInt(1), res.getTime(2).toLocalTime(), res.getTime(3).toLocalTime())));
+                }
+                return BellTimeline.of(periods);
+            }
+        });
+    }
+
+    void setBell(int bellOrder, LocalTime begin, LocalTime end) {
+        db.transaction("bells.setBell", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT add_bell(?, ?, ?)")) {
+                st.setInt(1, bellOrder);
+                st.setTime(2, Time.valueOf(begin));
+                st.setTime(3, Time.valueOf(end));
+                st.executeQuery();
+                return null;
+            }
+        });
+    }
+
+    void removeBell(int bellOrder) {
+        db.transaction("bells.removeBell", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO bell_schedule_history(bell_order, begin_time, end_time) VALUES (?, NULL, NULL)")) {
+                st.setInt(1, bellOrder);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+}
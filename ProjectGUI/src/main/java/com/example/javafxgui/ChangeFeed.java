@@ -0,0 +1,169 @@
+package com.example.javafxgui;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+public class ChangeFeed implements AutoCloseable {
+
+    static final String CHANNEL = "school_changes";
+
+    record TableChange(String table, String operation, int[] ids) {
+
+        boolean isFull() {
+            return ids == null;
+        }
+
+        boolean touches(int id) {
+            return ids == null || Arrays.stream(ids).anyMatch(changed -> changed == id);
+        }
+
+        boolean applyTo(ObservableList<Integer> list) {
+            if (ids == null)
+                return false;
+            for (int id : ids) {
+                int index = list.indexOf(id);
+                if (operation.equals("DELETE")) {
+                    if (index >= 0)
+                        list.remove(index);
+                } else if (index >= 0) {
+                    list.set(index, id);
+                } else if (operation.equals("INSERT")) {
+                    list.add(id);
+                }
+            }
+            return true;
+        }
+
+        static TableChange parse(String payload) {
+            String[] parts = payload.split(" ");
+            if (parts.length < 3 || parts[2].equals("*"))
+                return new TableChange(parts[0], parts.length > 1 ? parts[1] : "UPDATE", null);
+            int[] ids = new int[parts.length - 2];
+            for (int i = 2; i < parts.length; i++)
+                ids[i - 2] = Integer.parseInt(parts[i]);
+            return new TableChange(parts[0], parts[1], ids);
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final ReferenceCache cache;
+    private final int pollMillis;
+    private final long retryMillis;
+
+    private final List<WeakReference<Consumer<TableChange>>> subscribers = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public ChangeFeed(ConnectionPool pool, ReferenceCache cache, int pollMillis, long retryMillis) {
+        this.pool = pool;
+        this.cache = cache;
+        this.pollMillis = pollMillis;
+        this.retryMillis = retryMillis;
+        this.thread = new Thread(this::listen, "school-changes");
+        this.thread.setDaemon(true);
+    }
+
+    public static ChangeFeed fromSystemProperties(ConnectionPool pool, ReferenceCache cache) {
+        return new ChangeFeed(pool, cache,
+                Integer.getInteger("school.changes.pollMillis", 500),
+                Long.getLong("school.changes.retryMillis", 5_000L));
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // A controller keeps its consumer in a field and unsubscribes it when it leaves its view. Subscribers are held
+    // weakly, so a view that is dropped some other way does not stay subscribed either.
+    public void subscribe(Consumer<TableChange> subscriber) {
+        subscribers.add(new WeakReference<>(subscriber));
+    }
+
+    public void unsubscribe(Consumer<TableChange> subscriber) {
+        subscribers.removeIf(ref -> ref.get() == null || ref.get() == subscriber);
+    }
+
+    // Tells the views that a table they show names from is cached again, as if it had changed.
+    public void announceLoaded(Reference reference) {
+        dispatch(new TableChange(reference.table, "UPDATE", null));
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        while (!closed) {
+            try (Connection conn = pool.openDedicated()) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnect)
+                    resynchronize();
+                reconnect = true;
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (!closed) {
+                    PGNotification[] notifications = pg.getNotifications(pollMillis);
+                    if (notifications == null)
+                        continue;
+                    for (PGNotification notification : notifications)
+                        apply(TableChange.parse(notification.getParameter()));
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (closed)
+                    return;
+                System.err.println("Change feed lost its connection: " + e.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Anything may have changed while we were not listening.
+    private void resynchronize() {
+        for (Reference reference : Reference.values())
+            cache.invalidate(reference);
+        for (String table : List.of("pupils", "employees", "groups", "rooms", "themes", "events", "marks", "skips"))
+            dispatch(new TableChange(table, "UPDATE", null));
+    }
+
+    private void apply(TableChange change) {
+        Reference reference = Reference.ofTable(change.table());
+        if (reference != null) {
+            if (change.isFull())
+                cache.invalidate(reference);
+            else
+                cache.refresh(reference, change.ids());
+        }
+        dispatch(change);
+    }
+
+    private void dispatch(TableChange change) {
+        Platform.runLater(() -> {
+            for (WeakReference<Consumer<TableChange>> ref : subscribers) {
+                Consumer<TableChange> subscriber = ref.get();
+                if (subscriber == null)
+                    subscribers.remove(ref);
+                else
+                    subscriber.accept(change);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.javafxgui;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int validationTimeoutSeconds;
+    private final long borrowTimeoutMillis;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    private final QueryMetrics queryMetrics = new QueryMetrics(250);
+
+    private final BlockingQueue<Connection> idle;
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxSize,
+                          int validationTimeoutSeconds, long borrowTimeoutMillis) {
+        this(url, user, password, maxSize, validationTimeoutSeconds, borrowTimeoutMillis, 64);
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxSize,
+                          int validationTimeoutSeconds, long borrowTimeoutMillis, int statementCacheSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Pool size must be positive.");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.idle = new LinkedBlockingQueue<>(maxSize);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public static ConnectionPool fromSystemProperties() {
+        ConnectionPool pool = new ConnectionPool(
+                System.getProperty("school.db.url", "jdbc:postgresql://localhost:5432/postgres"),
+                System.getProperty("school.db.user", "postgres"),
+                System.getProperty("school.db.password", "31415"),
+                Integer.getInteger("school.db.poolSize", 4),
+                Integer.getInteger("school.db.validationTimeout", 2),
+                Long.getLong("school.db.borrowTimeout", 30_000L),
+                Integer.getInteger("school.db.statementCacheSize", 64));
+        pool.queryMetrics.setSlowQueryMillis(Long.getLong("school.db.slowQueryMillis", 250L));
+        return pool;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public StatementCache.Stats statementStats() {
+        return statementCounters.snapshot();
+    }
+
+    public QueryMetrics queryMetrics() {
+        return queryMetrics;
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool is closed.");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new SQLException("Timed out waiting for a free connection.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a free connection.", e);
+        }
+        try {
+            Connection conn;
+            while ((conn = idle.poll()) != null) {
+                if (isUsable(conn))
+                    return conn;
+                closeQuietly(conn);
+            }
+            return open();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(Connection conn) {
+        try {
+            if (closed || conn.isClosed()) {
+                closeQuietly(conn);
+                return;
+            }
+            // Ends whatever a read-only unit of work left open, so the next borrower starts clean.
+            conn.rollback();
+            if (!idle.offer(conn))
+                closeQuietly(conn);
+        } catch (SQLException e) {
+            closeQuietly(conn);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public Connection openDedicated() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool is closed.");
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private boolean isUsable(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection open() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, user, password);
+        conn.setAutoCommit(false);
+        if (statementCacheSize > 0)
+            conn = StatementCache.wrap(conn, statementCacheSize, statementCounters);
+        return queryMetrics.wrap(conn);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection conn;
+        while ((conn = idle.poll()) != null)
+            closeQuietly(conn);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.javafxgui;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Streams the journal and the computed averages to CSV files. Every export is a COPY ... TO STDOUT written
+// straight into a buffered file writer, so memory use does not depend on how much history is exported. All
+// files are read from one snapshot.
+public class CopyExporter {
+
+    record ExportReport(String name, long rows, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %9d rows  %8.1f ms  %10.0f rows/s",
+                    name, rows, nanos / 1e6, nanos == 0 ? 0 : rows * 1e9 / nanos);
+        }
+    }
+
+    private final Database db;
+
+    public CopyExporter(Database db) {
+        this.db = db;
+    }
+
+    List<ExportReport> exportJournal(Path directory, LocalDate from, LocalDate to) {
+        String dates = "'" + from + "'::date AND '" + to + "'::date";
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("events", "SELECT e.event_id, e.event_date, e.event_bell, e.teacher_id, e.room_id, e.class_id, " +
+                              "t.subject_id, e.theme_id FROM events e LEFT JOIN themes t ON t.theme_id = e.theme_id " +
+                              "WHERE e.event_date BETWEEN " + dates + " ORDER BY e.event_date, e.event_bell, e.event_id");
+        queries.put("marks", "SELECT mark_id, event_id, event_date, pupil_id, mark, type_id FROM marks " +
+                             "WHERE event_date BETWEEN " + dates +
+                             " ORDER BY event_id, pupil_id");
+        queries.put("skips", "SELECT skip_id, event_id, event_date, pupil_id, excused FROM skip_stats WHERE event_date BETWEEN " + dates +
+                             " ORDER BY event_id, pupil_id");
+        queries.put("quarter_marks", "SELECT qm.pupil_id, qm.subject_id, qm.quarter_id, qm.mark FROM quarter_marks qm " +
+                                     "JOIN quarters q ON q.quarter_id = qm.quarter_id " +
+                                     "WHERE q.begin_date <= '" + to + "'::date AND q.end_date >= '" + from + "'::date " +
+                                     "ORDER BY qm.quarter_id, qm.pupil_id, qm.subject_id");
+        queries.put("year_marks", "SELECT pupil_id, subject_id, year, mark FROM year_marks " +
+                                  "WHERE year BETWEEN " + schoolYear(from) + " AND " + schoolYear(to) +
+                                  " ORDER BY year, pupil_id, subject_id");
+        return export(directory, queries);
+    }
+
+    List<ExportReport> export(Path directory, Map<String, String> queries) {
+        return db.query(conn -> {
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+            }
+            CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+            List<ExportReport> reports = new ArrayList<>();
+            try {
+                Files.createDirectories(directory);
+                for (Map.Entry<String, String> query : queries.entrySet()) {
+                    long start = System.nanoTime();
+                    long rows;
+                    try (Writer out = Files.newBufferedWriter(directory.resolve(query.getKey() + ".csv"), StandardCharsets.UTF_8)) {
+                        rows = copy.copyOut("COPY (" + query.getValue() + ") TO STDOUT WITH (FORMAT csv, HEADER)", out);
+                    }
+                    reports.add(new ExportReport(query.getKey(), rows, System.nanoTime() - start));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return reports;
+        });
+    }
+
+    private static int schoolYear(LocalDate date) {
+        return date.getMonthValue() < 7 ? date.getYear() - 1 : date.getYear();
+    }
+
+    // Usage: CopyExporter <directory> [<from> <to>]
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 3) {
+            System.err.println("Usage: CopyExporter <directory> [<from yyyy-mm-dd> <to yyyy-mm-dd>]");
+            System.exit(2);
+        }
+        LocalDate from = args.length == 3 ? LocalDate.parse(args[1]) : LocalDate.of(1900, 1, 1);
+        LocalDate to = args.length == 3 ? LocalDate.parse(args[2]) : LocalDate.of(2999, 12, 31);
+        try (ConnectionPool pool = ConnectionPool.fromSystemProperties()) {
+            new CopyExporter(new Database(pool)).exportJournal(Path.of(args[0]), from, to).forEach(System.out::println);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.javafxgui;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Loads CSV data into the school tables in one transaction: every source is streamed through COPY into a
+// temporary staging table, its foreign keys are checked against what is already loaded, and it is merged
+// into the real table with a single INSERT ... SELECT. Tables are processed parents first.
+public class CopyImporter {
+
+    @FunctionalInterface
+    public interface CsvSource {
+        // A CSV text whose first line names the columns of the target table.
+        Reader open() throws IOException;
+    }
+
+    record TableReport(String table, long rows, long copyNanos, long mergeNanos) {
+
+        double rowsPerSecond() {
+            long nanos = copyNanos + mergeNanos;
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %9d rows  copy %7.1f ms  merge %8.1f ms  %10.0f rows/s",
+                    table, rows, copyNanos / 1e6, mergeNanos / 1e6, rowsPerSecond());
+        }
+    }
+
+    private record ForeignKey(String name, String table, List<String> columns, String parent, List<String> parentColumns) {
+    }
+
+    // Some rules are checked against tables that no foreign key points at (a class teacher has to be employed at
+    // the time, an excuse has to start at an existing bell), so tables without a key between them are loaded in
+    // the order the data block of create.sql fills them.
+    static final List<String> LOAD_ORDER = List.of("quarters", "holidays", "bell_schedule_history", "mark_types",
+            "type_weights_history", "pupils", "classes", "class_history", "subjects", "themes", "groups",
+            "groups_history", "subject_to_class_certificate", "employees", "posts", "employees_history", "salary_history",
+            "class_teacher_history", "rooms", "schedule_history", "groups_to_schedule", "events", "groups_to_events",
+            "marks", "skips", "excuses");
+
+    private final Database db;
+
+    public CopyImporter(Database db) {
+        this.db = db;
+    }
+
+    List<TableReport> importDirectory(Path directory) {
+        Map<String, CsvSource> sources = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.csv")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                sources.put(name.substring(0, name.length() - ".csv".length()), () -> Files.newBufferedReader(file));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return importSources(sources);
+    }
+
+    List<TableReport> importSources(Map<String, CsvSource> sources) {
+        return db.transaction(conn -> {
+            List<String> tables = tables(conn);
+            for (String table : sources.keySet())
+                if (!tables.contains(table))
+                    throw new IllegalArgumentException("There is no table " + table + " to import into.");
+            List<ForeignKey> keys = foreignKeys(conn);
+            // The foreign key and trigger lookups on the partitioned events would otherwise be planned again for
+            // every merged row.
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+            }
+            CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+            List<TableReport> reports = new ArrayList<>();
+            for (String table : dependencyOrder(tables.stream().filter(sources::containsKey).toList(), keys))
+                reports.add(importTable(conn, copy, table, sources.get(table), keys));
+            return reports;
+        });
+    }
+
+    private TableReport importTable(Connection conn, CopyManager copy, String table, CsvSource source,
+                                    List<ForeignKey> keys) throws SQLException {
+        String stage = quote("stage_" + table);
+        long copyStart = System.nanoTime();
+        long rows;
+        List<String> columns;
+        String columnList;
+        try (BufferedReader reader = new BufferedReader(source.open(), 1 << 16)) {
+            String header = reader.readLine();
+            if (header == null)
+                throw new IllegalArgumentException("The data for " + table + " is empty.");
+            columns = Arrays.stream(header.split(",")).map(String::trim).toList();
+            columnList = columns.stream().map(CopyImporter::quote).collect(Collectors.joining(", "));
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TEMP TABLE " + stage + " ON COMMIT DROP AS SELECT " + columnList +
+                           " FROM " + quote(table) + " WITH NO DATA");
+            }
+            rows = copy.copyIn("COPY " + stage + " (" + columnList + ") FROM STDIN WITH (FORMAT csv)", reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long mergeStart = System.nanoTime();
+        for (ForeignKey key : keys)
+            if (key.table().equals(table) && columns.containsAll(key.columns()))
+                checkReferences(conn, stage, key);
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO " + quote(table) + " (" + columnList + ") SELECT " + columnList + " FROM " + stage);
+            st.execute("DROP TABLE " + stage);
+        }
+        advanceSequences(conn, table, columns);
+        return new TableReport(table, rows, mergeStart - copyStart, System.nanoTime() - mergeStart);
+    }
+
+    private static void checkReferences(Connection conn, String stage, ForeignKey key) throws SQLException {
+        String present = key.columns().stream().map(column -> "s." + quote(column) + " IS NOT NULL")
+                .collect(Collectors.joining(" AND "));
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < key.columns().size(); i++)
+            matches.add("p." + quote(key.parentColumns().get(i)) + " = s." + quote(key.columns().get(i)));
+        try (Statement st = conn.createStatement()) {
+            ResultSet res = st.executeQuery("SELECT COUNT(*) FROM " + stage + " s WHERE " + present +
+                                            " AND NOT EXISTS(SELECT FROM " + quote(key.parent()) + " p WHERE " +
+                                            String.join(" AND ", matches) + ")");
+            res.next();
+            long missing = res.getLong(1);
+            if (missing > 0)
+                throw new IllegalStateException(missing + " rows of " + key.table() + " break " + key.name() +
+                                                ": no matching " + key.parent() + key.parentColumns());
+        }
+    }
+
+    private static void advanceSequences(Connection conn, String table, List<String> columns) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement("SELECT column_name FROM information_schema.columns " +
+                                                          "WHERE table_schema = current_schema() AND table_name = ? " +
+                                                          "AND column_default LIKE 'nextval(%'")) {
+            st.setString(1, table);
+            ResultSet res = st.executeQuery();
+            List<String> serials = new ArrayList<>();
+            while (res.next())
+                if (columns.contains(res.getString(1)))
+                    serials.add(res.getString(1));
+            for (String column : serials) {
+                try (PreparedStatement set = conn.prepareStatement("SELECT setval(pg_get_serial_sequence(?, ?), MAX(" +
+                                                                   quote(column) + ")) FROM " + quote(table) +
+                                                                   " HAVING MAX(" + quote(column) + ") IS NOT NULL")) {
+                    set.setString(1, quote(table));
+                    set.setString(2, column);
+                    set.executeQuery();
+                }
+            }
+        }
+    }
+
+    private static List<String> tables(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            ResultSet res = st.executeQuery("SELECT relname FROM pg_class WHERE relnamespace = current_schema()::regnamespace " +
+                                            "AND relkind IN ('r', 'p') AND NOT relispartition ORDER BY oid");
+            List<String> tables = new ArrayList<>();
+            while (res.next())
+                tables.add(res.getString(1));
+            tables.sort(Comparator.comparingInt(table -> LOAD_ORDER.contains(table) ? LOAD_ORDER.indexOf(table) : LOAD_ORDER.size()));
+            return tables;
+        }
+    }
+
+    private static List<ForeignKey> foreignKeys(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            ResultSet res = st.executeQuery("SELECT c.conname, t.relname, p.relname, " +
+                                            "ARRAY(SELECT a.attname FROM unnest(c.conkey) WITH ORDINALITY k(attnum, i) " +
+                                            "JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = k.attnum ORDER BY k.i)::text[], " +
+                                            "ARRAY(SELECT a.attname FROM unnest(c.confkey) WITH ORDINALITY k(attnum, i) " +
+                                            "JOIN pg_attribute a ON a.attrelid = c.confrelid AND a.attnum = k.attnum ORDER BY k.i)::text[] " +
+                                            "FROM pg_constraint c JOIN pg_class t ON t.oid = c.conrelid JOIN pg_class p ON p.oid = c.confrelid " +
+                                            "WHERE c.contype = 'f' AND c.conparentid = 0 AND t.relnamespace = current_schema()::regnamespace");
+            List<ForeignKey> keys = new ArrayList<>();
+            while (res.next())
+                keys.add(new ForeignKey(res.getString(1), res.getString(2), List.of((String[]) res.getArray(4).getArray()),
+                        res.getString(3), List.of((String[]) res.getArray(5).getArray())));
+            return keys;
+        }
+    }
+
+    private static List<String> dependencyOrder(List<String> tables, List<ForeignKey> keys) {
+        Map<String, Set<String>> parents = new LinkedHashMap<>();
+        for (String table : tables)
+            parents.put(table, new HashSet<>());
+        for (ForeignKey key : keys)
+            if (tables.contains(key.table()) && tables.contains(key.parent()) && !key.table().equals(key.parent()))
+                parents.get(key.table()).add(key.parent());
+        List<String> order = new ArrayList<>();
+        while (!parents.isEmpty()) {
+            String ready = parents.entrySet().stream()
+                    .filter(entry -> order.containsAll(entry.getValue()))
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Tables " + parents.keySet() + " reference each other."));
+            order.add(ready);
+            parents.remove(ready);
+        }
+        return order;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    // Usage: CopyImporter <directory with one <table>.csv per table>
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: CopyImporter <directory of <table>.csv files>");
+            System.exit(2);
+        }
+        try (ConnectionPool pool = ConnectionPool.fromSystemProperties()) {
+            long start = System.nanoTime();
+            List<TableReport> reports = new CopyImporter(new Database(pool)).importDirectory(Path.of(args[0]));
+            long nanos = System.nanoTime() - start;
+            reports.forEach(System.out::println);
+            long rows = reports.stream().mapToLong(TableReport::rows).sum();
+            System.out.printf("%d rows in %.2f s, %.0f rows/s%n", rows, nanos / 1e9, rows * 1e9 / nanos);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.javafxgui;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class Database {
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private static final StackWalker CALLERS = StackWalker.getInstance();
+
+    private final ConnectionPool pool;
+    private final QueryMetrics metrics;
+
+    public Database(ConnectionPool pool) {
+        this.pool = pool;
+        this.metrics = pool.queryMetrics();
+    }
+
+    // The unnamed forms are recorded under the calling method, e.g. CopyExporter.export.
+    public <T> T query(SqlWork<T> work) {
+        return query(caller(), work);
+    }
+
+    public <T> T transaction(SqlWork<T> work) {
+        return transaction(caller(), work);
+    }
+
+    public <T> T query(String name, SqlWork<T> work) {
+        Connection conn = borrow();
+        QueryMetrics.Unit unit = metrics.begin(name);
+        boolean failed = true;
+        try {
+            T result = work.run(conn);
+            failed = false;
+            return result;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            metrics.end(unit, failed);
+            pool.release(conn);
+        }
+    }
+
+    public <T> T transaction(String name, SqlWork<T> work) {
+        Connection conn = borrow();
+        QueryMetrics.Unit unit = metrics.begin(name);
+        boolean failed = true;
+        try {
+            T result = work.run(conn);
+            conn.commit();
+            failed = false;
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            if (e instanceof RuntimeException re)
+                throw re;
+            throw new RuntimeException(e);
+        } finally {
+            metrics.end(unit, failed);
+            pool.release(conn);
+        }
+    }
+
+    private Connection borrow() {
+        try {
+            return pool.borrow();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String caller() {
+        return CALLERS.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().equals(Database.class.getName()))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1) + "." + frame.getMethodName())
+                .orElse("unnamed"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.javafxgui;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import static com.example.javafxgui.HelloApplication.pool;
+
+// Opened with Ctrl+Shift+D from any menu; shows the query metrics of the pool, refreshed every second.
+public class DiagnosticsController {
+
+    @FXML Spinner<Integer> slowQueryPicker;
+    @FXML Label statementCacheLabel;
+    @FXML TableView<QueryMetrics.Summary> queriesTable;
+    @FXML TableColumn<QueryMetrics.Summary, String> nameColumn;
+    @FXML TableColumn<QueryMetrics.Summary, Long> callsColumn;
+    @FXML TableColumn<QueryMetrics.Summary, Long> failuresColumn;
+    @FXML TableColumn<QueryMetrics.Summary, Long> rowsColumn;
+    @FXML TableColumn<QueryMetrics.Summary, Double> meanColumn;
+    @FXML TableColumn<QueryMetrics.Summary, Double> p50Column;
+    @FXML TableColumn<QueryMetrics.Summary, Double> p95Column;
+    @FXML TableColumn<QueryMetrics.Summary, Double> p99Column;
+    @FXML TableColumn<QueryMetrics.Summary, Double> maxColumn;
+
+    private static Stage window;
+
+    final QueryMetrics metrics = pool.queryMetrics();
+    final Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh()));
+
+    static void show(Window owner) {
+        if (window == null) {
+            try {
+                FXMLLoader loader = new FXMLLoader(DiagnosticsController.class.getResource("diagnostics-view.fxml"));
+                window = new Stage();
+                window.initOwner(owner);
+                window.setTitle("Diagnostics");
+                window.setScene(new Scene(loader.load()));
+                DiagnosticsController controller = loader.getController();
+                window.setOnShown(event -> controller.refresh.play());
+                window.setOnHidden(event -> controller.refresh.stop());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        window.show();
+        window.toFront();
+    }
+
+    void refresh() {
+        queriesTable.getItems().setAll(metrics.getQueries());
+        queriesTable.sort();
+        statementCacheLabel.setText("Statement cache: " + pool.statementStats());
+    }
+
+    @FXML
+    void onReset() {
+        metrics.reset();
+        refresh();
+    }
+
+    private static <T> void bind(TableColumn<QueryMetrics.Summary, T> column, Function<QueryMetrics.Summary, T> value) {
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+    }
+
+    private static double millis(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    @FXML
+    void initialize() {
+        slowQueryPicker.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 60_000,
+                (int) metrics.getSlowQueryMillis(), 50));
+        slowQueryPicker.valueProperty().addListener((observable, oldValue, newValue) -> metrics.setSlowQueryMillis(newValue));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+
+        bind(nameColumn, QueryMetrics.Summary::getName);
+        bind(callsColumn, QueryMetrics.Summary::getCalls);
+        bind(failuresColumn, QueryMetrics.Summary::getFailures);
+        bind(rowsColumn, QueryMetrics.Summary::getRows);
+        bind(meanColumn, summary -> millis(summary.getMeanMillis()));
+        bind(p50Column, summary -> millis(summary.getP50Millis()));
+        bind(p95Column, summary -> millis(summary.getP95Millis()));
+        bind(p99Column, summary -> millis(summary.getP99Millis()));
+        bind(maxColumn, summary -> millis(summary.getMaxMillis()));
+        refresh();
+    }
+}
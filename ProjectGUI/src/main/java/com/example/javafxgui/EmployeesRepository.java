@@ -0,0 +1,62 @@
+package com.example.javafxgui;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class EmployeesRepository {
+
+    private final Database db;
+    private final ReferenceCache cache;
+
+    public EmployeesRepository(Database db, ReferenceCache cache) {
+        this.db = db;
+        this.cache = cache;
+    }
+
+    int addEmployee(String firstName, String lastName) {
+        int id = db.transaction("employees.addEmployee", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO employees(first_name, last_name) VALUES (?, ?) RETURNING employee_id")) {
+                st.setString(1, firstName);
+                st.setString(2, lastName);
+                ResultSet res = st.executeQuery();
+                res.next();
+                return res.getInt(1);
+            }
+        });
+        cache.put(Reference.EMPLOYEES, id, firstName + " " + lastName);
+        return id;
+    }
+
+    void setSalary(int employeeId, int salary) {
+        db.transaction("employees.setSalary", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO salary_history(employee_id, salary) VALUES (?, ?)")) {
+                st.setInt(1, employeeId);
+                st.setInt(2, salary);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    void addPost(int employeeId, int postId) {
+        db.transaction("employees.addPost", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT add_post(?, ?)")) {
+                st.setInt(1, employeeId);
+                st.setInt(2, postId);
+                st.executeQuery();
+                return null;
+            }
+        });
+    }
+
+    void removePost(int employeeId, int postId) {
+        db.transaction("employees.removePost", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT delete_post(?, ?)")) {
+                st.setInt(1, employeeId);
+                st.setInt(2, postId);
+                st.executeQuery();
+                return null;
+            }
+        });
+    }
+}
@@ -21,15 +21,18 @@ import javafx.util.Callback;
 import javafx.util.Pair;
 
 import java.io.IOException;
-import java.sql.*;
-import java.sql.Date;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-import static com.example.javafxgui.HelloApplication.conn;
+import static com.example.javafxgui.HelloApplication.bellTimes;
+import static com.example.javafxgui.HelloApplication.cache;
+import static com.example.javafxgui.HelloApplication.changes;
+import static com.example.javafxgui.HelloApplication.db;
+import static com.example.javafxgui.HelloApplication.queries;
 
 public class EventsMenuController {
     @FXML DatePicker datePicker;
@@ -52,6 +55,10 @@ public class EventsMenuController {
     final ObservableList<Integer> chosenGroups = FXCollections.observableArrayList();
     final ObservableList<Integer> pupilsList = FXCollections.observableArrayList();
     final Set<Integer> pupilsSkips = new HashSet<>();
+    final Map<Integer, Set<Integer>> groupPupils = new HashMap<>();
+    int rosterEvent;
+    final Map<Integer, Boolean> skipEdits = new HashMap<>();
+    @FXML Button saveSkipsButton;
     final IntegerProperty chosenPupil = new SimpleIntegerProperty();
 
     final IntegerProperty editableEvent = new SimpleIntegerProperty();
@@ -60,17 +67,13 @@ public class EventsMenuController {
     @FXML Spinner<Integer> markPicker;
     @FXML ComboBox<Integer> markTypePicker;
     @FXML Button setMarkButton;
+    @FXML Button saveMarksButton;
+    final Map<Integer, EventsRepository.Mark> eventMarks = new HashMap<>();
+    final Map<Integer, EventsRepository.Mark> markEdits = new HashMap<>();
 
     final ObservableList<Integer> lessonsOnDate = FXCollections.observableArrayList();
     final Map<Integer, Pair<LocalTime, LocalTime>> lessonsBounds = new HashMap<>();
 
-    final Map<Integer, String> employeeFullNameById = new HashMap<>();
-    final Map<Integer, String> roomNameById = new HashMap<>();
-    final Map<Integer, String> subjectNameById = new HashMap<>();
-    final Map<Integer, String> themeNameById = new HashMap<>();
-    final Map<Integer, String> groupNameById = new HashMap<>();
-    final Map<Integer, String> pupilFullNameById = new HashMap<>();
-    final Map<Integer, String> markTypeNameById = new HashMap<>();
 
     final ObservableList<Integer> availableDefaultScheduleTeachers = FXCollections.observableArrayList();
     final ObservableList<Integer> availableTeachers = FXCollections.observableArrayList();
@@ -78,76 +81,82 @@ public class EventsMenuController {
     final ObservableList<Integer> availableSubjects = FXCollections.observableArrayList();
     final ObservableList<Integer> availableThemes = FXCollections.observableArrayList();
     final ObservableList<Integer> availableGroups = FXCollections.observableArrayList();
+    final Map<Integer, List<Integer>> dayGroups = new HashMap<>();
     final ObservableList<Integer> availableMarkTypes = FXCollections.observableArrayList();
 
+    final EventsRepository events = new EventsRepository(db);
+
+    final QueryExecutor.Slot bellsRequest = queries.slot();
+    final QueryExecutor.Slot defaultTeachersRequest = queries.slot();
+    final QueryExecutor.Slot teachersRequest = queries.slot();
+    final QueryExecutor.Slot roomsRequest = queries.slot();
+    final QueryExecutor.Slot subjectsRequest = queries.slot();
+    final QueryExecutor.Slot themesRequest = queries.slot();
+    final QueryExecutor.Slot groupsRequest = queries.slot();
+    final QueryExecutor.Slot pupilsRequest = queries.slot();
+    final QueryExecutor.Slot rosterRequest = queries.slot();
+    final QueryExecutor.Slot markRequest = queries.slot();
+    final QueryExecutor.Slot eventRequest = queries.slot();
+
     void initInfo(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT employee_id, CONCAT(first_name, ' ', last_name) FROM employees")) {
-            ResultSet res = st.executeQuery();
-            employeeFullNameById.clear();
-            while (res.next())
-                employeeFullNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        queries.submit(() -> {
+            for (Reference reference : List.of(Reference.EMPLOYEES, Reference.ROOMS, Reference.SUBJECTS,
+                    Reference.THEMES, Reference.GROUPS, Reference.PUPILS))
+                cache.load(reference);
+            return cache.load(Reference.MARK_TYPES);
+        }, markTypes -> {
+            availableMarkTypes.setAll(markTypes.ids());
+            groupsListView.refresh();
+            pupilsListView.refresh();
+        });
+    }
 
-        try(PreparedStatement st = conn.prepareStatement("SELECT room_id, title FROM rooms")) {
-            ResultSet res = st.executeQuery();
-            roomNameById.clear();
-            while (res.next())
-                roomNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        try(PreparedStatement st = conn.prepareStatement("SELECT subject_id, title FROM subjects")) {
-            ResultSet res = st.executeQuery();
-            subjectNameById.clear();
-            while (res.next())
-                subjectNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        try(PreparedStatement st = conn.prepareStatement("SELECT theme_id, title FROM themes")) {
-            ResultSet res = st.executeQuery();
-            themeNameById.clear();
-            while (res.next())
-                themeNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        try(PreparedStatement st = conn.prepareStatement("SELECT group_id, title FROM \"groups\"")) {
-            ResultSet res = st.executeQuery();
-            groupNameById.clear();
-            while (res.next())
-                groupNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        try(PreparedStatement st = conn.prepareStatement("SELECT pupil_id, CONCAT(first_name, ' ', last_name) FROM pupils")) {
-            ResultSet res = st.executeQuery();
-            pupilFullNameById.clear();
-            while (res.next())
-                pupilFullNameById.put(res.getInt(1), res.getString(2));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        try(PreparedStatement st = conn.prepareStatement("SELECT type_id, type_name FROM mark_types")){
-            ResultSet res = st.executeQuery();
-            markTypeNameById.clear();
-            while(res.next())
-                markTypeNameById.put(res.getInt(1), res.getString(2));
-            availableMarkTypes.setAll(markTypeNameById.keySet());
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+    final Consumer<ChangeFeed.TableChange> onChange = change -> {
+        int event = editableEvent.get();
+        switch (change.table()) {
+            case "employees" -> updateAvailableTeachers();
+            case "rooms" -> updateAvailableRooms();
+            case "subjects" -> updateAvailableSubjects();
+            case "themes" -> updateAvailableThemes();
+            case "groups" -> {
+                if (event != 0)
+                    updateGroups();
+                groupsListView.refresh();
+            }
+            case "pupils" -> {
+                pupilsListView.refresh();
+                if (pupilsList.contains(chosenPupil.get()))
+                    chosenPupilText.setText(cache.name(Reference.PUPILS, chosenPupil.get()));
+            }
+            case "events" -> {
+                if (event != 0 && change.touches(event)) {
+                    if (change.operation().equals("DELETE"))
+                        editableEvent.set(0);
+                    else
+                        loadEditableEvent(event);
+                }
+            }
+            case "marks" -> {
+                if (event != 0 && change.touches(event))
+                    loadMarks();
+            }
+            case "bell_schedule_history" -> updateLessonsOnDate();
+            case "skips" -> {
+                if (event != 0 && change.touches(event))
+                    updateSkips();
+            }
         }
-    }
+    };
 
     {
         initInfo();
+        changes.subscribe(onChange);
     }
 
 
     @FXML
     void goToMenu(ActionEvent event) {
+        changes.unsubscribe(onChange);
         Stage stage = (Stage) ((Node) event.getSource()).getScene().getWindow();
         try {
             Parent root = new FXMLLoader(MainMenuController.class.getResource("main-menu-view.fxml")).load();
@@ -159,252 +168,301 @@ public class EventsMenuController {
 
     @FXML
     void onLoadButtonPressed(ActionEvent event){
-        try(PreparedStatement st = conn.prepareStatement("SELECT teacher_id, room_id, subject_id FROM get_schedule(?) WHERE bell_order = ? AND teacher_id = ?")){
-            st.setDate(1, Date.valueOf(datePicker.getValue()));
-            st.setInt(2, lessonPicker.getValue());
-            st.setInt(3, defaultScheduleTeacherPicker.getValue());
-            ResultSet res = st.executeQuery();
-            if(res.next()){
-                teacherPicker.setValue(res.getInt(1));
-                roomPicker.setValue(res.getInt(2));
-                subjectPicker.setValue(res.getInt(3));
-            }
-            else throw new RuntimeException();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        LocalDate date = datePicker.getValue();
+        int lesson = lessonPicker.getValue();
+        int teacher = defaultScheduleTeacherPicker.getValue();
+        queries.submit(() -> events.findScheduledLesson(date, lesson, teacher).orElseThrow(RuntimeException::new), entry -> {
+            teacherPicker.setValue(entry.teacherId());
+            roomPicker.setValue(entry.roomId());
+            subjectPicker.setValue(entry.subjectId());
+        });
     }
     
     @FXML
     void OnStartLesson(ActionEvent event){
-        try(PreparedStatement st = conn.prepareStatement("INSERT INTO events(event_date, event_bell, teacher_id, room_id, theme_id) VALUES (?, ?, ?, ?, ?) RETURNING event_id")){
-            st.setDate(1, Date.valueOf(datePicker.getValue()));
-            st.setInt(2, lessonPicker.getValue());
-            st.setInt(3, teacherPicker.getValue());
-            st.setInt(4, roomPicker.getValue());
-            st.setInt(5, themePicker.getValue());
-            ResultSet res = st.executeQuery();
-            res.next();
-            editableEvent.set(res.getInt(1));
-            conn.commit();
-        } catch (SQLException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
-            throw new RuntimeException(e);
-        }
+        LocalDate date = datePicker.getValue();
+        int lesson = lessonPicker.getValue();
+        int teacher = teacherPicker.getValue();
+        int room = roomPicker.getValue();
+        int theme = themePicker.getValue();
+        queries.submit(() -> events.startLesson(date, lesson, teacher, room, theme), editableEvent::set);
     }
 
     void loadEditableEvent(int event_id){
-        try(PreparedStatement st = conn.prepareStatement("SELECT event_date, event_bell, teacher_id, room_id, get_subject_of_theme(theme_id), theme_id FROM events WHERE event_id = ?")){
-            st.setInt(1, event_id);
-            ResultSet res = st.executeQuery();
-            if(res.next()) {
-                datePicker.setValue(res.getDate(1).toLocalDate());
-                lessonPicker.getValueFactory().setValue(res.getInt(2));
-                teacherPicker.setValue(res.getInt(3));
-                roomPicker.setValue(res.getInt(4));
-                subjectPicker.setValue(res.getInt(5));
-                themePicker.setValue(res.getInt(6));
-            }
+        eventRequest.submit(() -> events.findEvent(event_id), info -> {
+            info.ifPresent(i -> {
+                datePicker.setValue(i.date());
+                lessonPicker.getValueFactory().setValue(i.bell());
+                teacherPicker.setValue(i.teacherId());
+                roomPicker.setValue(i.roomId());
+                subjectPicker.setValue(i.subjectId());
+                themePicker.setValue(i.themeId());
+            });
             editableEvent.set(event_id);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        });
     }
 
     @FXML
     void onLoadLesson(ActionEvent event){
-        try(PreparedStatement st = conn.prepareStatement("SELECT event_id FROM events WHERE event_date = ? AND event_bell = ? " +
-                                                                                           "AND ? = teacher_id")){
-            st.setDate(1, Date.valueOf(datePicker.getValue()));
-            st.setInt(2, lessonPicker.getValue());
-            if(teacherPicker.getValue() != null) {
-                st.setInt(3, teacherPicker.getValue());
-                ResultSet res = st.executeQuery();
-                if (res.next()) {
-                    editableEvent.set(res.getInt(1));
-                    loadEditableEvent(editableEvent.get());
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        if(teacherPicker.getValue() != null) {
+            LocalDate date = datePicker.getValue();
+            int lesson = lessonPicker.getValue();
+            int teacher = teacherPicker.getValue();
+            eventRequest.submit(() -> events.findEventId(date, lesson, teacher), id -> id.ifPresent(eventId -> {
+                editableEvent.set(eventId);
+                loadEditableEvent(editableEvent.get());
+            }));
         }
     }
 
     @FXML
     void onGroupAdd(){
-        if(addGroupPicker.getValue() != 0    && !chosenGroups.contains(addGroupPicker.getValue())) {
-            try(PreparedStatement st = conn.prepareStatement("INSERT INTO groups_to_events(group_id, event_id) VALUES (?, ?)")){
-                st.setInt(1, addGroupPicker.getValue());
-                st.setInt(2, editableEvent.get());
-                st.executeUpdate();
-                conn.commit();
-            } catch (SQLException e) {
-                try{
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    throw new RuntimeException(ex);
-                }
-                throw new RuntimeException(e);
-            }
-            chosenGroups.add(addGroupPicker.getValue());
+        Integer group = addGroupPicker.getValue();
+        if(group != 0    && !chosenGroups.contains(group)) {
+            int event = editableEvent.get();
+            queries.run(() -> events.addGroupToEvent(group, event), () -> {
+                if(editableEvent.get() == event && !chosenGroups.contains(group))
+                    chosenGroups.add(group);
+            });
         }
     }
 
+    void updateLessonsOnDate(){
+        LocalDate date = datePicker.getValue();
+        if(date == null)
+            return;
+        BellTimeline timeline = bellTimes.peek();
+        if(timeline != null) {
+            bellsRequest.cancel();
+            showLessons(timeline.bellsOn(date));
+        }
+        else
+            bellsRequest.submit(() -> bellTimes.get().bellsOn(date), this::showLessons);
+    }
+
+    void showLessons(List<BellsRepository.Bell> schedule){
+        List<Integer> lessons = new ArrayList<>();
+        lessonsBounds.clear();
+        for (BellsRepository.Bell bell : schedule) {
+            lessons.add(bell.order());
+            lessonsBounds.put(bell.order(), new Pair<>(bell.begin(), bell.end()));
+        }
+        lessonsOnDate.setAll(lessons);
+    }
+
     void updateAvailableDefaultTeachers() {
-        try(PreparedStatement st = conn.prepareStatement("SELECT * FROM get_schedule(?) WHERE bell_order = ?")){
-            st.setDate(1, Date.valueOf(datePicker.getValue()));
-            st.setInt(2, lessonPicker.getValue());
-            ResultSet res = st.executeQuery();
-            List<Integer> newList = FXCollections.observableArrayList();
-            while (res.next())
-                newList.add(res.getInt(1));
-            availableDefaultScheduleTeachers.setAll(newList);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        LocalDate date = datePicker.getValue();
+        Integer lesson = lessonPicker.getValue();
+        if(date == null || lesson == null) {
+            defaultTeachersRequest.cancel();
+            availableDefaultScheduleTeachers.clear();
+            return;
         }
+        defaultTeachersRequest.submit(() -> events.scheduledTeachers(date, lesson), availableDefaultScheduleTeachers::setAll);
     }
 
     void updateAvailableTeachers(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT employee_id FROM employees")){
-            ResultSet res = st.executeQuery();
-            List<Integer> newList = FXCollections.observableArrayList();
-            while (res.next())
-                newList.add(res.getInt(1));
-            availableTeachers.setAll(newList);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        teachersRequest.submit(() -> cache.load(Reference.EMPLOYEES).ids(), availableTeachers::setAll);
     }
 
     void updateAvailableRooms(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT room_id FROM rooms")){
-            ResultSet res = st.executeQuery();
-            List<Integer> newList = FXCollections.observableArrayList();
-            while (res.next())
-                newList.add(res.getInt(1));
-            availableRooms.setAll(newList);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        roomsRequest.submit(() -> cache.load(Reference.ROOMS).ids(), availableRooms::setAll);
     }
 
     void updateAvailableSubjects(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT subject_id FROM subjects")){
-            ResultSet res = st.executeQuery();
-            List<Integer> newList = FXCollections.observableArrayList();
-            while (res.next())
-                newList.add(res.getInt(1));
-            availableSubjects.setAll(newList);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        subjectsRequest.submit(() -> cache.load(Reference.SUBJECTS).ids(), availableSubjects::setAll);
     }
 
     void updateAvailableThemes(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT theme_id FROM themes WHERE subject_id = ?")){
-            List<Integer> newList = FXCollections.observableArrayList();
-            if(subjectPicker.getValue() != null){
-                st.setInt(1, subjectPicker.getValue());
-                ResultSet res = st.executeQuery();
-                while (res.next())
-                    newList.add(res.getInt(1));
-            }
-            availableThemes.setAll(newList);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        Integer subject = subjectPicker.getValue();
+        if(subject != null)
+            themesRequest.submit(() -> events.themeIds(subject), availableThemes::setAll);
+        else {
+            themesRequest.cancel();
+            availableThemes.clear();
         }
     }
 
     void updateGroups(){
-        try(PreparedStatement stAvailable = conn.prepareStatement("SELECT group_id FROM \"groups\" WHERE groups_to_events_same_class_check_f(group_id, ?) AND groups_to_events_same_subject_check_f(group_id, ?)");
-            PreparedStatement stChosen = conn.prepareStatement("SELECT group_id FROM groups_to_events WHERE event_id = ?")){
-            {
-                stAvailable.setInt(1, editableEvent.get());
-                stAvailable.setInt(2, editableEvent.get());
-                ResultSet res = stAvailable.executeQuery();
-                List<Integer> newList = FXCollections.observableArrayList();
-                while (res.next())
-                    newList.add(res.getInt(1));
-                availableGroups.setAll(newList);
-            }
-            {
-                stChosen.setInt(1, editableEvent.get());
-                ResultSet res = stChosen.executeQuery();
-                List<Integer> newList = FXCollections.observableArrayList();
-                while (res.next())
-                    newList.add(res.getInt(1));
-                chosenGroups.setAll(newList);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        int event = editableEvent.get();
+        List<Integer> known = dayGroups.get(event);
+        groupsRequest.submit(() -> new Pair<>(known != null ? Map.of(event, known) : events.availableGroupsOfDay(event), events.chosenGroups(event)), groups -> {
+            dayGroups.putAll(groups.getKey());
+            availableGroups.setAll(groups.getKey().getOrDefault(event, List.of()));
+            chosenGroups.setAll(groups.getValue());
+        });
     }
 
     void updatePupils(){
-        Set<Integer> newPupils = new HashSet<>();
-        try(PreparedStatement st = conn.prepareStatement("SELECT DISTINCT get_pupils_from_group(group_id) FROM unnest(?) AS group_id")){
-            st.setArray(1, conn.createArrayOf("integer", chosenGroups.toArray()));
-            ResultSet res = st.executeQuery();
-            while(res.next())
-                newPupils.add(res.getInt(1));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        pupilsList.setAll(newPupils);
-
-        pupilsSkips.clear();
-        try(PreparedStatement st = conn.prepareStatement("SELECT DISTINCT pupil_id, was_at_lecture(pupil_id, ?) FROM unnest(?) AS pupil_id")){
-            st.setInt(1, editableEvent.get());
-            st.setArray(2, conn.createArrayOf("integer", pupilsList.toArray()));
-            ResultSet res = st.executeQuery();
-            while(res.next())
-                if(!res.getBoolean(2))
-                    pupilsSkips.add(res.getInt(1));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        int event = editableEvent.get();
+        if(event != rosterEvent){
+            rosterEvent = event;
+            groupPupils.clear();
+            pupilsList.clear();
+            pupilsSkips.clear();
+            skipEdits.clear();
+            eventMarks.clear();
         }
-        chosenPupil.set(0);
+        groupPupils.keySet().retainAll(chosenGroups);
+        Set<Integer> covered = new HashSet<>();
+        groupPupils.values().forEach(covered::addAll);
+        pupilsList.retainAll(covered);
+        pupilsSkips.retainAll(covered);
+        skipEdits.keySet().retainAll(covered);
+        markEdits.keySet().retainAll(covered);
+        saveSkipsButton.setDisable(skipEdits.isEmpty());
+        saveMarksButton.setDisable(markEdits.isEmpty());
+        if(!covered.contains(chosenPupil.get()))
+            chosenPupil.set(0);
         pupilsListView.refresh();
-    }
 
-    void tryLoadMark(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT mark, type_id FROM marks WHERE event_id = ? AND pupil_id = ?")){
-            st.setInt(1, editableEvent.get());
-            st.setInt(2, chosenPupil.get());
-            ResultSet res = st.executeQuery();
-            if(res.next()){
-                markPicker.getValueFactory().setValue(res.getInt(1));
-                markTypePicker.setValue(res.getInt(2));
-            }
-            else{
-                markPicker.getValueFactory().setValue(0);
+        List<Integer> added = chosenGroups.stream().filter(group -> !groupPupils.containsKey(group)).toList();
+        if(added.isEmpty())
+            return;
+        rosterRequest.submit(() -> events.roster(event, added), roster -> {
+            if(rosterEvent != event)
+                return;
+            for(int group : added)
+                if(chosenGroups.contains(group))
+                    groupPupils.putIfAbsent(group, new HashSet<>());
+            Set<Integer> listed = new HashSet<>(pupilsList);
+            List<Integer> joined = new ArrayList<>();
+            for(EventsRepository.RosterEntry entry : roster){
+                Set<Integer> members = groupPupils.get(entry.groupId());
+                if(members == null)
+                    continue;
+                members.add(entry.pupilId());
+                if(!listed.add(entry.pupilId()))
+                    continue;
+                cache.put(Reference.PUPILS, entry.pupilId(), entry.name());
+                joined.add(entry.pupilId());
+                if(entry.absent())
+                    pupilsSkips.add(entry.pupilId());
+                if(entry.mark() != null)
+                    eventMarks.put(entry.pupilId(), entry.mark());
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            pupilsList.addAll(joined);
+            showChosenMark();
+            pupilsListView.refresh();
+        });
+    }
+
+    void updateSkips(){
+        int event = editableEvent.get();
+        List<Integer> pupils = List.copyOf(pupilsList);
+        pupilsRequest.submit(() -> events.absentPupils(event, pupils), absent -> {
+            pupilsSkips.clear();
+            pupilsSkips.addAll(absent);
+            pupilsListView.refresh();
+        });
+    }
+
+    boolean isAbsent(int pupil){
+        return skipEdits.getOrDefault(pupil, pupilsSkips.contains(pupil));
+    }
+
+    void toggleSkip(int pupil){
+        boolean absent = !isAbsent(pupil);
+        if(absent == pupilsSkips.contains(pupil))
+            skipEdits.remove(pupil);
+        else
+            skipEdits.put(pupil, absent);
+        saveSkipsButton.setDisable(skipEdits.isEmpty());
+    }
+
+    @FXML
+    void onSaveSkips(ActionEvent event){
+        int lesson = editableEvent.get();
+        Map<Integer, Boolean> edits = Map.copyOf(skipEdits);
+        if(lesson == 0 || edits.isEmpty())
+            return;
+        List<Integer> absent = new ArrayList<>();
+        List<Integer> present = new ArrayList<>();
+        edits.forEach((pupil, isAbsent) -> (isAbsent ? absent : present).add(pupil));
+        queries.run(() -> events.saveSkips(lesson, absent, present), () -> {
+            if(editableEvent.get() != lesson)
+                return;
+            pupilsSkips.addAll(absent);
+            pupilsSkips.removeAll(present);
+            edits.forEach(skipEdits::remove);
+            saveSkipsButton.setDisable(skipEdits.isEmpty());
+            pupilsListView.refresh();
+        });
+    }
+
+    void loadMarks(){
+        int event = editableEvent.get();
+        if(event == 0) {
+            markRequest.cancel();
+            eventMarks.clear();
+            showChosenMark();
+            return;
+        }
+        markRequest.submit(() -> events.marksOfEvent(event), marks -> {
+            eventMarks.clear();
+            eventMarks.putAll(marks);
+            showChosenMark();
+            pupilsListView.refresh();
+        });
+    }
+
+    EventsRepository.Mark currentMark(int pupil){
+        EventsRepository.Mark edit = markEdits.get(pupil);
+        if(edit == null)
+            return eventMarks.get(pupil);
+        return edit.mark() == 0 ? null : edit;
+    }
+
+    void showChosenMark(){
+        EventsRepository.Mark mark = currentMark(chosenPupil.get());
+        if(mark != null){
+            markPicker.getValueFactory().setValue(mark.mark());
+            markTypePicker.setValue(mark.typeId());
+        }
+        else{
+            markPicker.getValueFactory().setValue(0);
         }
     }
 
     @FXML
     void onSetMark(ActionEvent event){
-        try(PreparedStatement st = conn.prepareStatement("INSERT INTO marks(pupil_id, event_id, mark, type_id) VALUES (?, ?, ?, ?)")){
-            st.setInt(1, chosenPupil.get());
-            st.setInt(2, editableEvent.get());
-            st.setInt(3, markPicker.getValue());
-            st.setInt(4, markTypePicker.getValue());
-            st.executeUpdate();
-            conn.commit();
-        } catch (SQLException e) {
-            try{
-                conn.rollback();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
-            throw new RuntimeException(e);
-        }
+        int pupil = chosenPupil.get();
+        int mark = markPicker.getValue();
+        Integer type = markTypePicker.getValue();
+        if(mark != 0 && type == null)
+            return;
+        EventsRepository.Mark edit = mark == 0 ? null : new EventsRepository.Mark(mark, type);
+        if(Objects.equals(edit, eventMarks.get(pupil)))
+            markEdits.remove(pupil);
+        else
+            markEdits.put(pupil, edit == null ? new EventsRepository.Mark(0, 0) : edit);
+        saveMarksButton.setDisable(markEdits.isEmpty());
+        pupilsListView.refresh();
+    }
+
+    @FXML
+    void onSaveMarks(ActionEvent event){
+        int lesson = editableEvent.get();
+        Map<Integer, EventsRepository.Mark> edits = Map.copyOf(markEdits);
+        if(lesson == 0 || edits.isEmpty())
+            return;
+        Map<Integer, EventsRepository.Mark> marks = new HashMap<>();
+        List<Integer> removed = new ArrayList<>();
+        edits.forEach((pupil, mark) -> {
+            if(mark.mark() == 0)
+                removed.add(pupil);
+            else
+                marks.put(pupil, mark);
+        });
+        queries.run(() -> events.saveMarks(lesson, marks, removed), () -> {
+            if(editableEvent.get() != lesson)
+                return;
+            eventMarks.putAll(marks);
+            removed.forEach(eventMarks::remove);
+            edits.forEach(markEdits::remove);
+            saveMarksButton.setDisable(markEdits.isEmpty());
+            pupilsListView.refresh();
+        });
     }
 
     boolean isListEmpty(List<?> list){
@@ -417,28 +475,14 @@ public class EventsMenuController {
         lessonsOnDate.addListener((ListChangeListener<Integer>) c -> lessonPicker.setDisable(isListEmpty(c.getList())));
         lessonPicker.setValueFactory(new SpinnerValueFactory.ListSpinnerValueFactory<>(lessonsOnDate));
         markPicker.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 12));
+        saveSkipsButton.setDisable(true);
         lessonPicker.valueProperty().addListener((observable, oldValue, newValue) -> {
             Pair<LocalTime, LocalTime> p = lessonsBounds.get(newValue);
             LocalTime from = p.getKey(),
                     to = p.getValue();
             lessonBoundsText.setText("from %s to %s".formatted(from.toString(), to.toString()));
         });
-        datePicker.valueProperty().addListener((observable, oldValue, newValue) -> {
-            try (PreparedStatement st = conn.prepareStatement("SELECT * FROM get_bells_schedule(?)")){
-                st.setDate(1, Date.valueOf(newValue));
-                ResultSet res = st.executeQuery();
-                List<Integer> lessons = new ArrayList<>();
-                lessonsBounds.clear();
-                while (res.next()) {
-                    int lesson = res.getInt(1);
-                    lessons.add(lesson);
-                    lessonsBounds.put(lesson, new Pair<>(res.getTime(2).toLocalTime(), res.getTime(3).toLocalTime()));
-                }
-                lessonsOnDate.setAll(lessons);
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
-        });
+        datePicker.valueProperty().addListener((observable, oldValue, newValue) -> updateLessonsOnDate());
         datePicker.valueProperty().addListener((observable, oldValue, newValue) -> {
             updateAvailableDefaultTeachers();
             updateAvailableTeachers();
@@ -452,12 +496,16 @@ public class EventsMenuController {
             updateAvailableSubjects();
         });
         subjectPicker.valueProperty().addListener((observable, oldValue, newValue) -> updateAvailableThemes());
-        editableEvent.addListener((observable, oldValue, newValue) -> updateGroups());
+        editableEvent.addListener((observable, oldValue, newValue) -> {
+            markEdits.clear();
+            saveMarksButton.setDisable(true);
+            updateGroups();
+        });
         chosenGroups.addListener((ListChangeListener<? super Integer>) c -> updatePupils());
 
         chosenPupil.addListener((observable, oldValue, newValue) -> {
             if(pupilsList.contains(newValue.intValue())){
-                chosenPupilText.setText(pupilFullNameById.get(newValue.intValue()));
+                chosenPupilText.setText(cache.name(Reference.PUPILS, newValue.intValue()));
                 markPicker.setDisable(false);
                 markTypePicker.setDisable(false);
                 setMarkButton.setDisable(false);
@@ -470,9 +518,11 @@ public class EventsMenuController {
             }
         });
 
-        chosenPupil.addListener((observable, oldValue, newValue) -> tryLoadMark());
+        chosenPupil.addListener((observable, oldValue, newValue) -> showChosenMark());
 
         {
+            datePicker.valueProperty().addListener(c -> dayGroups.clear());
+            teacherPicker.valueProperty().addListener(c -> dayGroups.clear());
             datePicker.valueProperty().addListener(c -> editableEvent.set(0));
             lessonPicker.valueProperty().addListener(c -> editableEvent.set(0));
             teacherPicker.valueProperty().addListener(c -> editableEvent.set(0));
@@ -480,19 +530,19 @@ public class EventsMenuController {
             subjectPicker.valueProperty().addListener(c -> editableEvent.set(0));
             themePicker.valueProperty().addListener(c -> editableEvent.set(0));
         }
-        Function<Map<Integer, String>, Supplier<ListCell<Integer>>> cellFactoryBuilder = map -> (() -> new ListCell<>() {
+        Function<Function<Integer, String>, Supplier<ListCell<Integer>>> cellFactoryBuilder = names -> (() -> new ListCell<>() {
             @Override
             protected void updateItem(Integer item, boolean empty) {
                 super.updateItem(item, empty);
                 if (item == null || empty) {
                     setGraphic(null);
                 } else {
-                    setText(map.get(item));
+                    setText(names.apply(item));
                 }
             }
         });
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(employeeFullNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.EMPLOYEES));
             defaultScheduleTeacherPicker.setButtonCell(cellFactory.get());
             defaultScheduleTeacherPicker.setCellFactory(param -> cellFactory.get());
 
@@ -504,7 +554,7 @@ public class EventsMenuController {
             defaultScheduleTeacherPicker.setItems(availableDefaultScheduleTeachers);
         } // defaultScheduleTeacherPicker
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(employeeFullNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.EMPLOYEES));
             teacherPicker.setButtonCell(cellFactory.get());
             teacherPicker.setCellFactory(param -> cellFactory.get());
 
@@ -513,7 +563,7 @@ public class EventsMenuController {
             teacherPicker.setItems(availableTeachers);
         } // teacherPicker
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(roomNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.ROOMS));
             roomPicker.setButtonCell(cellFactory.get());
             roomPicker.setCellFactory(param -> cellFactory.get());
 
@@ -522,7 +572,7 @@ public class EventsMenuController {
             roomPicker.setItems(availableRooms);
         } // roomPicker
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(subjectNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.SUBJECTS));
             subjectPicker.setButtonCell(cellFactory.get());
             subjectPicker.setCellFactory(param -> cellFactory.get());
 
@@ -531,7 +581,7 @@ public class EventsMenuController {
             subjectPicker.setItems(availableSubjects);
         } // subjectPicker
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(themeNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.THEMES));
             themePicker.setButtonCell(cellFactory.get());
             themePicker.setCellFactory(param -> cellFactory.get());
 
@@ -541,7 +591,7 @@ public class EventsMenuController {
         } // themePicker
 
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(groupNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.GROUPS));
             addGroupPicker.setButtonCell(cellFactory.get());
             addGroupPicker.setCellFactory(param -> cellFactory.get());
 
@@ -553,7 +603,7 @@ public class EventsMenuController {
             addGroupPicker.setItems(availableGroups);
         } // addGroupPicker
         {
-            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(markTypeNameById);
+            Supplier<ListCell<Integer>> cellFactory = cellFactoryBuilder.apply(cache.lookup(Reference.MARK_TYPES));
             markTypePicker.setButtonCell(cellFactory.get());
             markTypePicker.setCellFactory(param -> cellFactory.get());
 
@@ -568,20 +618,12 @@ public class EventsMenuController {
                 {
                     this.setOnMouseClicked(event -> {
                         if(event.getClickCount() >= 2 && item != null) {
-                            try(PreparedStatement st = conn.prepareStatement("DELETE FROM groups_to_events WHERE group_id = ? AND event_id = ?")){
-                                st.setInt(1, item);
-                                st.setInt(2, editableEvent.get());
-                                st.executeUpdate();
-                                conn.commit();
-                            } catch (SQLException e) {
-                                try{
-                                    conn.rollback();
-                                } catch (SQLException ex) {
-                                    throw new RuntimeException(ex);
-                                }
-                                throw new RuntimeException(e);
-                            }
-                            chosenGroups.remove(item);
+                            Integer group = item;
+                            int lesson = editableEvent.get();
+                            queries.run(() -> events.removeGroupFromEvent(group, lesson), () -> {
+                                if(editableEvent.get() == lesson)
+                                    chosenGroups.remove(group);
+                            });
                         }
                         groupsListView.refresh();
                     });
@@ -594,7 +636,7 @@ public class EventsMenuController {
                     if (item == null || empty) {
                         setText(null);
                     } else {
-                        setText(groupNameById.get(item));
+                        setText(cache.name(Reference.GROUPS, item));
                     }
                 }
             };
@@ -617,37 +659,7 @@ public class EventsMenuController {
                             chosenPupil.set(item);
                         }
                         else if(event.getClickCount() == 2) {
-                            if (pupilsSkips.contains(item)) {
-                                try (PreparedStatement st = conn.prepareStatement("DELETE FROM skips WHERE pupil_id = ? AND event_id = ?")) {
-                                    st.setInt(1, item);
-                                    st.setInt(2, editableEvent.getValue());
-                                    st.executeUpdate();
-                                    conn.commit();
-                                } catch (SQLException e) {
-                                    try {
-                                        conn.rollback();
-                                    } catch (SQLException ex) {
-                                        throw new RuntimeException(ex);
-                                    }
-                                    throw new RuntimeException(e);
-                                }
-                                pupilsSkips.remove(item);
-                            } else {
-                                try (PreparedStatement st = conn.prepareStatement("INSERT INTO skips(pupil_id, event_id) VALUES (?, ?)")) {
-                                    st.setInt(1, item);
-                                    st.setInt(2, editableEvent.getValue());
-                                    st.executeUpdate();
-                                    conn.commit();
-                                } catch (SQLException e) {
-                                    try {
-                                        conn.rollback();
-                                    } catch (SQLException ex) {
-                                        throw new RuntimeException(ex);
-                                    }
-                                    throw new RuntimeException(e);
-                                }
-                                pupilsSkips.add(item);
-                            }
+                            toggleSkip(item);
                         }
                         pupilsListView.refresh();
                     });
@@ -660,10 +672,12 @@ public class EventsMenuController {
                     if (item == null || empty) {
                         setText(null);
                     } else {
-                        if(pupilsSkips.contains(item))
+                        if(isAbsent(item))
                             setTextFill(Color.RED);
                         else setTextFill(Color.BLACK);
-                        setText(pupilFullNameById.get(item));
+                        setStyle(skipEdits.containsKey(item) || markEdits.containsKey(item) ? "-fx-font-style: italic;" : "");
+                        EventsRepository.Mark mark = currentMark(item);
+                        setText(mark == null ? cache.name(Reference.PUPILS, item) : "%s (%d)".formatted(cache.name(Reference.PUPILS, item), mark.mark()));
                     }
                 }
             };
@@ -0,0 +1,278 @@
+package com.example.javafxgui;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+
+public class EventsRepository {
+
+    record ScheduleEntry(int teacherId, int roomId, int subjectId) {
+    }
+
+    record EventInfo(LocalDate date, int bell, int teacherId, int roomId, int subjectId, int themeId) {
+    }
+
+    record Mark(int mark, int typeId) {
+    }
+
+    record RosterEntry(int groupId, int pupilId, String name, boolean absent, Mark mark) {
+    }
+
+    private final Database db;
+
+    public EventsRepository(Database db) {
+        this.db = db;
+    }
+
+    Optional<ScheduleEntry> findScheduledLesson(LocalDate date, int bell, int teacherId) {
+        return db.query("events.findScheduledLesson", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT teacher_id, room_id, subject_id FROM get_schedule(?) WHERE bell_order = ? AND teacher_id = ?")) {
+                st.setDate(1, Date.valueOf(date));
+                st.setInt(2, bell);
+                st.setInt(3, teacherId);
+                ResultSet res = st.executeQuery();
+                if (res.next())
+                    return Optional.of(new ScheduleEntry(res.getInt(1), res.getInt(2), res.getInt(3)));
+                return Optional.empty();
+            }
+        });
+    }
+
+    List<Integer> scheduledTeachers(LocalDate date, int bell) {
+        return db.query("events.scheduledTeachers", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT * FROM get_schedule(?) WHERE bell_order = ?")) {
+                st.setDate(1, Date.valueOf(date));
+                st.setInt(2, bell);
+                return ids(st.executeQuery());
+            }
+        });
+    }
+
+    int startLesson(LocalDate date, int bell, int teacherId, int roomId, int themeId) {
+        return db.transaction("events.startLesson", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO events(event_date, event_bell, teacher_id, room_id, theme_id) VALUES (?, ?, ?, ?, ?) RETURNING event_id")) {
+                st.setDate(1, Date.valueOf(date));
+                st.setInt(2, bell);
+                st.setInt(3, teacherId);
+                st.setInt(4, roomId);
+                st.setInt(5, themeId);
+                ResultSet res = st.executeQuery();
+                res.next();
+                return res.getInt(1);
+            }
+        });
+    }
+
+    Optional<EventInfo> findEvent(int eventId) {
+        return db.query("events.findEvent", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT e.event_date, e.event_bell, e.teacher_id, e.room_id, t.subject_id, e.theme_id " +
+                                                                  "FROM events e LEFT JOIN themes t ON t.theme_id = e.theme_id WHERE e.event_id = ?")) {
+                st.setInt(1, eventId);
+                ResultSet res = st.executeQuery();
+                if (res.next())
+                    return Optional.of(new EventInfo(res.getDate(1).toLocalDate(), res.getInt(2), res.getInt(3),
+                            res.getInt(4), res.getInt(5), res.getInt(6)));
+                return Optional.empty();
+            }
+        });
+    }
+
+    OptionalInt findEventId(LocalDate date, int bell, int teacherId) {
+        return db.query("events.findEventId", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT event_id FROM events WHERE event_date = ? AND event_bell = ? " +
+                                                                  "AND ? = teacher_id")) {
+                st.setDate(1, Date.valueOf(date));
+                st.setInt(2, bell);
+                st.setInt(3, teacherId);
+                ResultSet res = st.executeQuery();
+                if (res.next())
+                    return OptionalInt.of(res.getInt(1));
+                return OptionalInt.empty();
+            }
+        });
+    }
+
+    void addGroupToEvent(int groupId, int eventId) {
+        db.transaction("events.addGroupToEvent", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO groups_to_events(group_id, event_id) VALUES (?, ?)")) {
+                st.setInt(1, groupId);
+                st.setInt(2, eventId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    void removeGroupFromEvent(int groupId, int eventId) {
+        db.transaction("events.removeGroupFromEvent", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("DELETE FROM groups_to_events WHERE group_id = ? AND event_id = ?")) {
+                st.setInt(1, groupId);
+                st.setInt(2, eventId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    List<Integer> themeIds(int subjectId) {
+        return db.query("events.themeIds", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT theme_id FROM themes WHERE subject_id = ?")) {
+                st.setInt(1, subjectId);
+                return ids(st.executeQuery());
+            }
+        });
+    }
+
+    List<Integer> availableGroups(int eventId) {
+        return availableGroups(List.of(eventId)).getOrDefault(eventId, List.of());
+    }
+
+    Map<Integer, List<Integer>> availableGroups(Collection<Integer> eventIds) {
+        return db.query("events.availableGroups", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT event_id, group_id FROM get_available_groups(?)")) {
+                st.setArray(1, conn.createArrayOf("integer", eventIds.toArray()));
+                return groupsByEvent(st.executeQuery());
+            }
+        });
+    }
+
+    // Every event the same teacher gives on the same day as eventId, so switching lessons needs no new query.
+    Map<Integer, List<Integer>> availableGroupsOfDay(int eventId) {
+        return db.query("events.availableGroupsOfDay", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT event_id, group_id FROM get_available_groups(ARRAY(" +
+                                                                  "SELECT d.event_id FROM events e JOIN events d ON d.teacher_id = e.teacher_id AND d.event_date = e.event_date " +
+                                                                  "WHERE e.event_id = ?))")) {
+                st.setInt(1, eventId);
+                return groupsByEvent(st.executeQuery());
+            }
+        });
+    }
+
+    List<Integer> chosenGroups(int eventId) {
+        return db.query("events.chosenGroups", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT group_id FROM groups_to_events WHERE event_id = ?")) {
+                st.setInt(1, eventId);
+                return ids(st.executeQuery());
+            }
+        });
+    }
+
+    Set<Integer> absentPupils(int eventId, Collection<Integer> pupilIds) {
+        return db.query("events.absentPupils", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT DISTINCT pupil_id FROM skips WHERE event_id = ? AND event_date = (SELECT event_date FROM events WHERE event_id = ?) AND pupil_id = ANY(?)")) {
+                st.setInt(1, eventId);
+                st.setInt(2, eventId);
+                st.setArray(3, conn.createArrayOf("integer", pupilIds.toArray()));
+                return new HashSet<>(ids(st.executeQuery()));
+            }
+        });
+    }
+
+    List<RosterEntry> roster(int eventId, Collection<Integer> groupIds) {
+        return db.query("events.roster", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT group_id, pupil_id, first_name, last_name, absent, mark, type_id " +
+                                                                  "FROM get_event_roster(?, ?)")) {
+                st.setInt(1, eventId);
+                st.setArray(2, conn.createArrayOf("integer", groupIds.toArray()));
+                ResultSet res = st.executeQuery();
+                List<RosterEntry> roster = new ArrayList<>();
+                while (res.next()) {
+                    int mark = res.getInt(6);
+                    Mark existing = res.wasNull() ? null : new Mark(mark, res.getInt(7));
+                    roster.add(new RosterEntry(res.getInt(1), res.getInt(2), res.getString(3) + " " + res.getString(4),
+                            res.getBoolean(5), existing));
+                }
+                return roster;
+            }
+        });
+    }
+
+    Map<Integer, Mark> marksOfEvent(int eventId) {
+        return db.query("events.marksOfEvent", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT pupil_id, mark, type_id FROM marks WHERE event_id = ? AND event_date = (SELECT event_date FROM events WHERE event_id = ?)")) {
+                st.setInt(1, eventId);
+                st.setInt(2, eventId);
+                ResultSet res = st.executeQuery();
+                Map<Integer, Mark> marks = new HashMap<>();
+                while (res.next())
+                    marks.put(res.getInt(1), new Mark(res.getInt(2), res.getInt(3)));
+                return marks;
+            }
+        });
+    }
+
+    void saveMarks(int eventId, Map<Integer, Mark> marks, Collection<Integer> removed) {
+        db.transaction("events.saveMarks", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("WITH removed AS (DELETE FROM marks WHERE event_id = ? AND event_date = (SELECT event_date FROM events WHERE event_id = ?) AND pupil_id = ANY(?)) " +
+                                                                  "INSERT INTO marks(pupil_id, event_id, event_date, mark, type_id) SELECT m.pupil_id, e.event_id, e.event_date, m.mark, m.type_id " +
+                                                                  "FROM unnest(?, ?, ?) AS m(pupil_id, mark, type_id) JOIN events e ON e.event_id = ? " +
+                                                                  "ON CONFLICT (pupil_id, event_id, event_date) DO UPDATE SET mark = EXCLUDED.mark, type_id = EXCLUDED.type_id")) {
+                Integer[] pupils = new Integer[marks.size()];
+                Integer[] values = new Integer[marks.size()];
+                Integer[] types = new Integer[marks.size()];
+                int i = 0;
+                for (Map.Entry<Integer, Mark> entry : marks.entrySet()) {
+                    pupils[i] = entry.getKey();
+                    values[i] = entry.getValue().mark();
+                    types[i] = entry.getValue().typeId();
+                    i++;
+                }
+                st.setInt(1, eventId);
+                st.setInt(2, eventId);
+                st.setArray(3, conn.createArrayOf("integer", removed.toArray()));
+                st.setArray(4, conn.createArrayOf("integer", pupils));
+                st.setArray(5, conn.createArrayOf("integer", values));
+                st.setArray(6, conn.createArrayOf("integer", types));
+                st.setInt(7, eventId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    void saveSkips(int eventId, Collection<Integer> absent, Collection<Integer> present) {
+        db.transaction("events.saveSkips", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("WITH removed AS (DELETE FROM skips WHERE event_id = ? AND event_date = (SELECT event_date FROM events WHERE event_id = ?) AND pupil_id = ANY(?)) " +
+                                                                  "INSERT INTO skips(pupil_id, event_id, event_date) SELECT DISTINCT absent.pupil_id, e.event_id, e.event_date " +
+                                                                  "FROM unnest(?) AS absent(pupil_id) JOIN events e ON e.event_id = ? " +
+                                                                  "WHERE NOT EXISTS(SELECT FROM skips WHERE skips.event_id = e.event_id AND skips.event_date = e.event_date AND skips.pupil_id = absent.pupil_id)")) {
+                st.setInt(1, eventId);
+                st.setInt(2, eventId);
+                st.setArray(3, conn.createArrayOf("integer", present.toArray()));
+                st.setArray(4, conn.createArrayOf("integer", absent.toArray()));
+                st.setInt(5, eventId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    private static List<Integer> ids(ResultSet res) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        while (res.next())
+            ids.add(res.getInt(1));
+        return ids;
+    }
+
+    private static Map<Integer, List<Integer>> groupsByEvent(ResultSet res) throws SQLException {
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        while (res.next()) {
+            List<Integer> ofEvent = groups.computeIfAbsent(res.getInt(1), event -> new ArrayList<>());
+            int group = res.getInt(2);
+            if (!res.wasNull())
+                ofEvent.add(group);
+        }
+        return groups;
+    }
+}
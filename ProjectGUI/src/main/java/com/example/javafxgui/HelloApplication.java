@@ -3,32 +3,49 @@ package com.example.javafxgui;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.Stage;
-import java.sql.*;
 
 import java.io.IOException;
 
 public class HelloApplication extends Application {
 
-    public static Connection conn;
+    public static ConnectionPool pool;
+    public static Database db;
+    public static QueryExecutor queries;
+    public static ReferenceCache cache;
+    public static ChangeFeed changes;
+    public static BellTimelineCache bellTimes;
 
     @Override
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(HelloApplication.class.getResource("main-menu-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 1280, 720);
         stage.setTitle("Hello!");
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.D, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN),
+                () -> DiagnosticsController.show(stage));
         stage.setScene(scene);
         stage.show();
     }
 
     public static void main(String[] args) {
-        String url = "jdbc:postgresql://localhost:5432/postgres";
-        try(Connection c = DriverManager.getConnection(url, "postgres", "31415")){
-            conn = c;
-            conn.setAutoCommit(false);
-            launch();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        try (ConnectionPool connections = ConnectionPool.fromSystemProperties();
+             QueryExecutor executor = new QueryExecutor(connections.maxSize())) {
+            pool = connections;
+            pool.queryMetrics().register();
+            db = new Database(pool);
+            queries = executor;
+            cache = new ReferenceCache(new ReferenceRepository(db), Integer.getInteger("school.cache.maxEntries", 200_000));
+            bellTimes = new BellTimelineCache(new BellsRepository(db));
+            try (ChangeFeed feed = ChangeFeed.fromSystemProperties(pool, cache)) {
+                changes = feed;
+                feed.subscribe(bellTimes.onChange);
+                cache.onMiss(reference -> queries.submit(() -> cache.load(reference), table -> feed.announceLoaded(reference)));
+                feed.start();
+                launch();
+            }
         }
     }
 }
\ No newline at end of file
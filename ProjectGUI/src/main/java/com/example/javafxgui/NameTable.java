@@ -0,0 +1,105 @@
+package com.example.javafxgui;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class NameTable {
+
+    static final NameTable EMPTY = new NameTable(new int[0], new String[0]);
+
+    private final int[] ids;
+    private final String[] names;
+
+    private NameTable(int[] ids, String[] names) {
+        this.ids = ids;
+        this.names = names;
+    }
+
+    static NameTable ofSorted(int[] ids, String[] names, int size) {
+        for (int i = 1; i < size; i++)
+            if (ids[i - 1] >= ids[i])
+                throw new IllegalArgumentException("Ids must be strictly ascending.");
+        return new NameTable(Arrays.copyOf(ids, size), Arrays.copyOf(names, size));
+    }
+
+    public String get(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? names[index] : null;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public List<Integer> ids() {
+        return new AbstractList<>() {
+            @Override
+            public Integer get(int index) {
+                return ids[index];
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    NameTable with(int id, String name) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            String[] newNames = names.clone();
+            newNames[index] = name;
+            return new NameTable(ids, newNames);
+        }
+        int at = -index - 1;
+        int[] newIds = new int[ids.length + 1];
+        String[] newNames = new String[names.length + 1];
+        System.arraycopy(ids, 0, newIds, 0, at);
+        System.arraycopy(names, 0, newNames, 0, at);
+        newIds[at] = id;
+        newNames[at] = name;
+        System.arraycopy(ids, at, newIds, at + 1, ids.length - at);
+        System.arraycopy(names, at, newNames, at + 1, names.length - at);
+        return new NameTable(newIds, newNames);
+    }
+
+    NameTable without(int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0)
+            return this;
+        int[] newIds = new int[ids.length - 1];
+        String[] newNames = new String[names.length - 1];
+        System.arraycopy(ids, 0, newIds, 0, index);
+        System.arraycopy(names, 0, newNames, 0, index);
+        System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+        System.arraycopy(names, index + 1, newNames, index, names.length - index - 1);
+        return new NameTable(newIds, newNames);
+    }
+
+    NameTable replace(int[] changedIds, NameTable rows) {
+        int[] changed = changedIds.clone();
+        Arrays.sort(changed);
+        int[] newIds = new int[ids.length + rows.ids.length];
+        String[] newNames = new String[newIds.length];
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (Arrays.binarySearch(changed, ids[i]) >= 0)
+                continue;
+            for (; j < rows.ids.length && rows.ids[j] < ids[i]; j++, size++) {
+                newIds[size] = rows.ids[j];
+                newNames[size] = rows.names[j];
+            }
+            newIds[size] = ids[i];
+            newNames[size] = names[i];
+            size++;
+        }
+        for (; j < rows.ids.length; j++, size++) {
+            newIds[size] = rows.ids[j];
+            newNames[size] = rows.names[j];
+        }
+        return new NameTable(Arrays.copyOf(newIds, size), Arrays.copyOf(newNames, size));
+    }
+}
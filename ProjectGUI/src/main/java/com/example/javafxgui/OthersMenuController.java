@@ -11,13 +11,12 @@ import javafx.scene.control.SpinnerValueFactory;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Time;
+import java.time.LocalDate;
 import java.time.LocalTime;
 
-import static com.example.javafxgui.HelloApplication.conn;
+import static com.example.javafxgui.HelloApplication.bellTimes;
+import static com.example.javafxgui.HelloApplication.db;
+import static com.example.javafxgui.HelloApplication.queries;
 
 public class OthersMenuController {
 
@@ -28,6 +27,8 @@ public class OthersMenuController {
     @FXML Spinner<Integer> endHourPicker;
     @FXML Spinner<Integer> endMinutePicker;
 
+    final BellsRepository bells = new BellsRepository(db);
+    final QueryExecutor.Slot boundsRequest = queries.slot();
 
 
     void initInfo() {
@@ -50,56 +51,32 @@ public class OthersMenuController {
 
     @FXML
     void onRemoveBell(){
-        try(PreparedStatement st = conn.prepareStatement("INSERT INTO bell_schedule_history(bell_order, begin_time, end_time) VALUES (?, NULL, NULL)")){
-            st.setInt(1, lessonPicker.getValue());
-            st.executeUpdate();
-            conn.commit();
-        } catch (SQLException e) {
-            try{
-                conn.rollback();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
-            throw new RuntimeException(e);
-        }
+        int lesson = lessonPicker.getValue();
+        queries.run(() -> {
+            bells.removeBell(lesson);
+            bellTimes.invalidate();
+        }, () -> {});
     }
 
     @FXML
     void onSetBell(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT add_bell(?, ?, ?)")){
-            LocalTime begin = LocalTime.of(beginHourPicker.getValue(), beginMinutePicker.getValue());
-            LocalTime end = LocalTime.of(endHourPicker.getValue(), endMinutePicker.getValue());
-            st.setInt(1, lessonPicker.getValue());
-            st.setTime(2, Time.valueOf(begin));
-            st.setTime(3, Time.valueOf(end));
-            st.executeQuery();
-            conn.commit();
-        } catch (SQLException e) {
-            try{
-                conn.rollback();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
-            throw new RuntimeException(e);
-        }
+        LocalTime begin = LocalTime.of(beginHourPicker.getValue(), beginMinutePicker.getValue());
+        LocalTime end = LocalTime.of(endHourPicker.getValue(), endMinutePicker.getValue());
+        int lesson = lessonPicker.getValue();
+        queries.run(() -> {
+            bells.setBell(lesson, begin, end);
+            bellTimes.invalidate();
+        }, () -> {});
     }
 
     void showCurrentBellBounds(){
-        try(PreparedStatement st = conn.prepareStatement("SELECT bell_begin_time(?), bell_end_time(?)")){
-            st.setInt(1, lessonPicker.getValue());
-            st.setInt(2, lessonPicker.getValue());
-            ResultSet res = st.executeQuery();
-            if(res.next() && res.getTime(1) != null) {
-                LocalTime begin = res.getTime(1).toLocalTime();
-                LocalTime end = res.getTime(2).toLocalTime();
-                beginHourPicker.getValueFactory().setValue(begin.getHour());
-                beginMinutePicker.getValueFactory().setValue(begin.getMinute());
-                endHourPicker.getValueFactory().setValue(end.getHour());
-                endMinutePicker.getValueFactory().setValue(end.getMinute());
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        int lesson = lessonPicker.getValue();
+        boundsRequest.submit(() -> bellTimes.get().bell(LocalDate.now(), lesson), bounds -> bounds.ifPresent(bell -> {
+            beginHourPicker.getValueFactory().setValue(bell.begin().getHour());
+            beginMinutePicker.getValueFactory().setValue(bell.begin().getMinute());
+            endHourPicker.getValueFactory().setValue(bell.end().getHour());
+            endMinutePicker.getValueFactory().setValue(bell.end().getMinute());
+        }));
     }
 
     @FXML
@@ -0,0 +1,76 @@
+package com.example.javafxgui;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class PupilsRepository {
+
+    private final Database db;
+    private final ReferenceCache cache;
+
+    public PupilsRepository(Database db, ReferenceCache cache) {
+        this.db = db;
+        this.cache = cache;
+    }
+
+    int addPupil(String firstName, String lastName, LocalDate birthDate) {
+        int id = db.transaction("pupils.addPupil", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO pupils(first_name, last_name, date_of_birth) VALUES (?, ?, ?) RETURNING pupil_id")) {
+                st.setString(1, firstName);
+                st.setString(2, lastName);
+                st.setDate(3, Date.valueOf(birthDate));
+                ResultSet res = st.executeQuery();
+                res.next();
+                return res.getInt(1);
+            }
+        });
+        cache.put(Reference.PUPILS, id, firstName + " " + lastName);
+        return id;
+    }
+
+    void movePupilToClass(int pupilId, int classId) {
+        db.transaction("pupils.movePupilToClass", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO class_history(pupil_id, class_id) VALUES (?, ?)")) {
+                st.setInt(1, pupilId);
+                st.setInt(2, classId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    void addPupilToGroup(int pupilId, int groupId) {
+        db.transaction("pupils.addPupilToGroup", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO groups_history(pupil_id, group_id) VALUES (?, ?)")) {
+                st.setInt(1, pupilId);
+                st.setInt(2, groupId);
+                st.executeUpdate();
+                return null;
+            }
+        });
+    }
+
+    // Members of every given group at the given moment; groups without members are left out.
+    Map<Integer, Set<Integer>> groupRosters(Collection<Integer> groupIds, LocalDateTime at) {
+        return db.query("pupils.groupRosters", conn -> {
+            try (PreparedStatement st = conn.prepareStatement("SELECT group_id, pupil_id FROM get_group_rosters(?, ?)")) {
+                st.setArray(1, conn.createArrayOf("integer", groupIds.toArray()));
+                st.setTimestamp(2, Timestamp.valueOf(at));
+                ResultSet res = st.executeQuery();
+                Map<Integer, Set<Integer>> rosters = new HashMap<>();
+                while (res.next())
+                    rosters.computeIfAbsent(res.getInt(1), group -> new HashSet<>()).add(res.getInt(2));
+                return rosters;
+            }
+        });
+    }
+}
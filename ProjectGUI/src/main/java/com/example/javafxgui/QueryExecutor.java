@@ -0,0 +1,88 @@
+package com.example.javafxgui;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class QueryExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    public QueryExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "school-query-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> work, Consumer<? super T> onFxThread) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone())
+                return;
+            try {
+                T value = work.get();
+                Platform.runLater(() -> {
+                    if (result.isDone())
+                        return;
+                    onFxThread.accept(value);
+                    result.complete(value);
+                });
+            } catch (Throwable e) {
+                Platform.runLater(() -> {
+                    if (result.completeExceptionally(e)) {
+                        Thread fxThread = Thread.currentThread();
+                        fxThread.getUncaughtExceptionHandler().uncaughtException(fxThread, e);
+                    }
+                });
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled())
+                task.cancel(true);
+        });
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Runnable work, Runnable onFxThread) {
+        return submit(() -> {
+            work.run();
+            return null;
+        }, ignore -> onFxThread.run());
+    }
+
+    public Slot slot() {
+        return new Slot();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public class Slot {
+
+        private CompletableFuture<?> current;
+
+        public <T> CompletableFuture<T> submit(Supplier<T> work, Consumer<? super T> onFxThread) {
+            cancel();
+            CompletableFuture<T> next = QueryExecutor.this.submit(work, onFxThread);
+            current = next;
+            return next;
+        }
+
+        public void cancel() {
+            if (current != null)
+                current.cancel(false);
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.javafxgui;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// Call counts, row counts and latencies of the units of work run through Database, keyed by their logical name
+// (events.roster, bells.timeline). A latency is counted in a power-of-two bucket of microseconds, so percentiles
+// come from the bucket bounds without keeping samples. The statements themselves are timed by the connection
+// wrapper of the pool: one slower than the threshold (0 turns the report off) is reported on stderr with its bind
+// values and its plan.
+public class QueryMetrics implements QueryMetricsMXBean {
+
+    static final String OBJECT_NAME = "com.example.javafxgui:type=QueryMetrics";
+    private static final int BUCKETS = 32;
+    private static final Pattern EXPLAINABLE = Pattern.compile("\\s*(SELECT|WITH|INSERT|UPDATE|DELETE|VALUES)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    public static final class Summary {
+
+        private final String name;
+        private final long calls;
+        private final long failures;
+        private final long rows;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        Summary(String name, long calls, long failures, long rows, double meanMillis, double p50Millis,
+                double p95Millis, double p99Millis, double maxMillis) {
+            this.name = name;
+            this.calls = calls;
+            this.failures = failures;
+            this.rows = rows;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-32s %8d calls %4d failed %10d rows  mean %8.2f  p50 %8.2f  p95 %8.2f  p99 %8.2f  max %8.2f ms",
+                    name, calls, failures, rows, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+
+    // The unit of work running on this thread, which the statements it executes report their rows to.
+    static final class Unit {
+
+        private final String name;
+        private final long start;
+        private final Unit outer;
+        private long rows;
+
+        private Unit(String name, Unit outer) {
+            this.name = name;
+            this.outer = outer;
+            this.start = System.nanoTime();
+        }
+    }
+
+    private static final class Timer {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long elapsed, long rowCount, boolean failed) {
+            calls.increment();
+            if (failed)
+                failures.increment();
+            rows.add(rowCount);
+            nanos.add(elapsed);
+            max.accumulateAndGet(elapsed, Math::max);
+            long micros = elapsed / 1000;
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        Summary summary(String name) {
+            long count = calls.sum();
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            double maxMillis = max.get() / 1e6;
+            return new Summary(name, count, failures.sum(), rows.sum(), count == 0 ? 0 : nanos.sum() / 1e6 / count,
+                    percentile(counts, total, 0.50, maxMillis), percentile(counts, total, 0.95, maxMillis),
+                    percentile(counts, total, 0.99, maxMillis), maxMillis);
+        }
+
+        // The upper bound of the bucket the percentile falls into: bucket i holds latencies below 2^i microseconds.
+        private static double percentile(long[] counts, long total, double fraction, double maxMillis) {
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0)
+                    return Math.min((1L << i) / 1e3, maxMillis);
+            }
+            return maxMillis;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Unit> current = new ThreadLocal<>();
+    private volatile long slowQueryMillis;
+
+    QueryMetrics(long slowQueryMillis) {
+        this.slowQueryMillis = slowQueryMillis;
+    }
+
+    Unit begin(String name) {
+        Unit unit = new Unit(name, current.get());
+        current.set(unit);
+        return unit;
+    }
+
+    void end(Unit unit, boolean failed) {
+        long elapsed = System.nanoTime() - unit.start;
+        if (unit.outer == null)
+            current.remove();
+        else
+            current.set(unit.outer);
+        timers.computeIfAbsent(unit.name, name -> new Timer()).record(elapsed, unit.rows, failed);
+    }
+
+    @Override
+    public List<Summary> getQueries() {
+        List<Summary> summaries = new ArrayList<>();
+        timers.forEach((name, timer) -> summaries.add(timer.summary(name)));
+        summaries.sort(Comparator.comparing(Summary::getName));
+        return summaries;
+    }
+
+    @Override
+    public long getSlowQueryMillis() {
+        return slowQueryMillis;
+    }
+
+    @Override
+    public void setSlowQueryMillis(long millis) {
+        slowQueryMillis = millis;
+    }
+
+    @Override
+    public void reset() {
+        timers.clear();
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(conn));
+    }
+
+    private void slowStatement(Connection conn, String sql, Map<Integer, Object[]> binds, Map<Integer, Method> setters,
+                               long elapsed) {
+        Unit unit = current.get();
+        StringBuilder report = new StringBuilder(String.format("Slow query %s took %.1f ms: %s%n",
+                unit == null ? "(outside a unit of work)" : unit.name, elapsed / 1e6, sql.strip()));
+        if (!binds.isEmpty()) {
+            StringJoiner values = new StringJoiner(", ", "  binds: ", "\n");
+            binds.forEach((index, args) -> values.add(index + "=" + args[1]));
+            report.append(values);
+        }
+        report.append(explain(conn, sql, binds, setters));
+        System.err.print(report);
+    }
+
+    // EXPLAIN without ANALYZE, so nothing runs a second time. Inside a transaction it goes behind a savepoint,
+    // so a statement the planner rejects does not abort the caller's work.
+    private static String explain(Connection conn, String sql, Map<Integer, Object[]> binds, Map<Integer, Method> setters) {
+        if (!EXPLAINABLE.matcher(sql).lookingAt())
+            return "";
+        Savepoint savepoint = null;
+        try {
+            if (!conn.getAutoCommit())
+                savepoint = conn.setSavepoint();
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement st = conn.prepareStatement("EXPLAIN " + sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                for (Map.Entry<Integer, Object[]> bind : binds.entrySet())
+                    setters.get(bind.getKey()).invoke(st, bind.getValue());
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    plan.append("  ").append(res.getString(1)).append('\n');
+            }
+            if (savepoint != null)
+                conn.releaseSavepoint(savepoint);
+            return plan.toString();
+        } catch (SQLException | ReflectiveOperationException e) {
+            try {
+                if (savepoint != null)
+                    conn.rollback(savepoint);
+            } catch (SQLException ignore) {
+            }
+            return "  (no plan: " + e.getMessage() + ")\n";
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection conn;
+
+        ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement(PreparedStatement.class, (String) args[0], QueryMetrics.invoke(conn, method, args));
+                case "prepareCall":
+                    return statement(CallableStatement.class, (String) args[0], QueryMetrics.invoke(conn, method, args));
+                case "createStatement":
+                    return statement(Statement.class, null, QueryMetrics.invoke(conn, method, args));
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "timed " + conn;
+            }
+            return QueryMetrics.invoke(conn, method, args);
+        }
+
+        private Object statement(Class<? extends Statement> type, String sql, Object st) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new StatementHandler(conn, sql, (Statement) st));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Connection conn;
+        private final String sql;
+        private final Statement st;
+        private final Map<Integer, Object[]> binds = new TreeMap<>();
+        private final Map<Integer, Method> setters = new TreeMap<>();
+
+        StatementHandler(Connection conn, String sql, Statement st) {
+            this.conn = conn;
+            this.sql = sql;
+            this.st = st;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute"))
+                return execute(method, args);
+            if (name.startsWith("set") && args != null && args.length >= 2 && method.getParameterTypes()[0] == int.class) {
+                binds.put((Integer) args[0], args.clone());
+                setters.put((Integer) args[0], method);
+            } else if (name.equals("clearParameters")) {
+                binds.clear();
+                setters.clear();
+            } else if (name.equals("getResultSet")) {
+                return rows((ResultSet) QueryMetrics.invoke(st, method, args));
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return QueryMetrics.invoke(st, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            boolean prepared = args == null || args.length == 0 || !(args[0] instanceof String);
+            String text = prepared ? sql : (String) args[0];
+            long start = System.nanoTime();
+            Object result = QueryMetrics.invoke(st, method, args);
+            long elapsed = System.nanoTime() - start;
+            Unit unit = current.get();
+            if (unit != null) {
+                if (result instanceof Integer count && count > 0)
+                    unit.rows += count;
+                else if (result instanceof Long count && count > 0)
+                    unit.rows += count;
+                else if (result instanceof int[] counts)
+                    for (int count : counts)
+                        unit.rows += Math.max(0, count);
+            }
+            long threshold = slowQueryMillis;
+            if (text != null && threshold > 0 && elapsed >= threshold * 1_000_000)
+                slowStatement(conn, text, prepared ? binds : Map.of(), setters, elapsed);
+            return result instanceof ResultSet res ? rows(res) : result;
+        }
+
+        private ResultSet rows(ResultSet res) {
+            Unit unit = current.get();
+            if (res == null || unit == null)
+                return res;
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        Object result = QueryMetrics.invoke(res, method, args);
+                        if (method.getName().equals("next") && (Boolean) result)
+                            unit.rows++;
+                        return result;
+                    });
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.javafxgui;
+
+import java.util.List;
+
+// Published by the application as com.example.javafxgui:type=QueryMetrics.
+public interface QueryMetricsMXBean {
+
+    List<QueryMetrics.Summary> getQueries();
+
+    long getSlowQueryMillis();
+
+    void setSlowQueryMillis(long millis);
+
+    void reset();
+}
@@ -0,0 +1,30 @@
+package com.example.javafxgui;
+
+public enum Reference {
+    EMPLOYEES("employees", "employee_id", "CONCAT(first_name, ' ', last_name)"),
+    ROOMS("rooms", "room_id", "title"),
+    SUBJECTS("subjects", "subject_id", "title"),
+    THEMES("themes", "theme_id", "title"),
+    GROUPS("groups", "group_id", "title"),
+    PUPILS("pupils", "pupil_id", "CONCAT(first_name, ' ', last_name)"),
+    CLASSES("classes", "class_id", "CONCAT(study_year::text, title)"),
+    MARK_TYPES("mark_types", "type_id", "type_name"),
+    POSTS("posts", "post_id", "title");
+
+    final String table;
+    final String idColumn;
+    final String sql;
+
+    Reference(String table, String idColumn, String name) {
+        this.table = table;
+        this.idColumn = idColumn;
+        this.sql = "SELECT " + idColumn + ", " + name + " FROM \"" + table + "\"";
+    }
+
+    static Reference ofTable(String table) {
+        for (Reference reference : values())
+            if (reference.table.equals(table))
+                return reference;
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.javafxgui;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class ReferenceCache {
+
+    private final ReferenceRepository repository;
+    private final int maxEntries;
+
+    private final LinkedHashMap<Reference, NameTable> tables = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Reference, Long> generations = new EnumMap<>(Reference.class);
+    private final Set<Reference> pending = EnumSet.noneOf(Reference.class);
+    private Consumer<Reference> onMiss = reference -> {
+    };
+    private int entries;
+
+    public ReferenceCache(ReferenceRepository repository, int maxEntries) {
+        this.repository = repository;
+        this.maxEntries = maxEntries;
+    }
+
+    // Told about a table that a lookup did not find cached (never loaded, evicted or invalidated) and that is not
+    // being loaded already, so it can be loaded off the FX thread and the lists showing it redrawn.
+    public synchronized void onMiss(Consumer<Reference> onMiss) {
+        this.onMiss = onMiss;
+    }
+
+    public NameTable load(Reference reference) {
+        long generation;
+        synchronized (this) {
+            NameTable table = tables.get(reference);
+            if (table != null)
+                return table;
+            generation = generations.getOrDefault(reference, 0L);
+            pending.add(reference);
+        }
+        NameTable loaded;
+        try {
+            loaded = repository.load(reference);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pending.remove(reference);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pending.remove(reference);
+            NameTable table = tables.get(reference);
+            if (table != null)
+                return table;
+            if (generation == generations.getOrDefault(reference, 0L))
+                store(reference, loaded);
+        }
+        return loaded;
+    }
+
+    public String name(Reference reference, int id) {
+        Consumer<Reference> missed;
+        synchronized (this) {
+            NameTable table = tables.get(reference);
+            if (table != null)
+                return table.get(id);
+            missed = pending.add(reference) ? onMiss : null;
+        }
+        if (missed != null)
+            missed.accept(reference);
+        return null;
+    }
+
+    public Function<Integer, String> lookup(Reference reference) {
+        return id -> id == null ? null : name(reference, id);
+    }
+
+    public synchronized void put(Reference reference, int id, String name) {
+        NameTable table = tables.get(reference);
+        if (table != null)
+            store(reference, table.with(id, name));
+        bump(reference);
+    }
+
+    public synchronized void remove(Reference reference, int id) {
+        NameTable table = tables.get(reference);
+        if (table != null)
+            store(reference, table.without(id));
+        bump(reference);
+    }
+
+    public void refresh(Reference reference, int[] ids) {
+        synchronized (this) {
+            if (!tables.containsKey(reference)) {
+                bump(reference);
+                return;
+            }
+        }
+        NameTable rows = repository.load(reference, ids);
+        synchronized (this) {
+            NameTable table = tables.get(reference);
+            if (table != null)
+                store(reference, table.replace(ids, rows));
+            bump(reference);
+        }
+    }
+
+    public synchronized void invalidate(Reference reference) {
+        NameTable table = tables.remove(reference);
+        if (table != null)
+            entries -= table.size();
+        bump(reference);
+    }
+
+    private void bump(Reference reference) {
+        generations.merge(reference, 1L, Long::sum);
+    }
+
+    private void store(Reference reference, NameTable table) {
+        NameTable previous = tables.put(reference, table);
+        entries += table.size() - (previous == null ? 0 : previous.size());
+        Iterator<Map.Entry<Reference, NameTable>> eldest = tables.entrySet().iterator();
+        while (entries > maxEntries && eldest.hasNext()) {
+            Map.Entry<Reference, NameTable> entry = eldest.next();
+            if (entry.getKey() == reference)
+                continue;
+            entries -= entry.getValue().size();
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.javafxgui;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public class ReferenceRepository {
+
+    private final Database db;
+
+    public ReferenceRepository(Database db) {
+        this.db = db;
+    }
+
+    NameTable load(Reference reference) {
+        return db.query("references.load", conn -> {
+            try (PreparedStatement st = conn.prepareStatement(reference.sql + " ORDER BY 1")) {
+                return read(st.executeQuery());
+            }
+        });
+    }
+
+    NameTable load(Reference reference, int[] ids) {
+        return db.query("references.loadIds", conn -> {
+            try (PreparedStatement st = conn.prepareStatement(reference.sql + " WHERE " + reference.idColumn + " = ANY(?) ORDER BY 1")) {
+                st.setArray(1, conn.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+                return read(st.executeQuery());
+            }
+        });
+    }
+
+    private static NameTable read(ResultSet res) throws SQLException {
+        int[] ids = new int[64];
+        String[] names = new String[64];
+        int size = 0;
+        while (res.next()) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            ids[size] = res.getInt(1);
+            names[size] = res.getString(2);
+            size++;
+        }
+        return NameTable.ofSorted(ids, names, size);
+    }
+}
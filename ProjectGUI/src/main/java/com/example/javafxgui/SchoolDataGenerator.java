@@ -0,0 +1,600 @@
+package com.example.javafxgui;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Generates a school of a given size over consecutive school years and writes it as one <table>.csv per table,
+// ready for CopyImporter. Every year the pupils move up a grade into new classes, twelfth graders leave and a new
+// first grade arrives. Each class gets two groups per subject, a weekly timetable taught by teachers who never
+// have two lessons at once, each in a room of their own, and one lesson per timetable row and school day, with
+// skips (days of illness come with an excuse) and marks for the pupils who attended. The data keeps to the
+// checks and triggers of create.sql, so it loads into an empty schema without losing a row.
+public class SchoolDataGenerator {
+
+    private record Kind(String title, int hours, boolean mandatory) {
+    }
+
+    private record Pupil(int id, int entryYear, int entryGrade, int letter, int half, double ability) {
+
+        int grade(int year) {
+            return entryGrade + year - entryYear;
+        }
+    }
+
+    private record SchoolClass(int id, int grade, int letter, List<Pupil> pupils, Map<Kind, int[]> groups) {
+    }
+
+    private record Lesson(SchoolClass schoolClass, Kind kind, int slot, int teacher) {
+    }
+
+    private record Quarter(int id, LocalDate begin, LocalDate end) {
+    }
+
+    private static final List<Kind> KINDS = List.of(new Kind("Mathematics", 5, true), new Kind("Native language", 4, true),
+            new Kind("English", 3, true), new Kind("History", 2, true), new Kind("Biology", 2, true),
+            new Kind("Physics", 2, true), new Kind("Chemistry", 2, true), new Kind("Geography", 2, true),
+            new Kind("Physical education", 2, true), new Kind("Debate", 1, false));
+    private static final String[] FIRST_NAMES = {"Anna", "Olena", "Maria", "Iryna", "Sofia", "Kateryna", "Yulia",
+            "Daria", "Natalia", "Viktoria", "Andrii", "Maksym", "Oleksandr", "Dmytro", "Ivan", "Taras", "Bohdan",
+            "Mykola", "Yurii", "Serhii"};
+    private static final String[] LAST_NAMES = {"Kovalenko", "Bondarenko", "Tkachenko", "Shevchenko", "Kravchenko",
+            "Melnyk", "Boiko", "Koval", "Oliinyk", "Lysenko", "Marchenko", "Savchenko", "Rudenko", "Moroz", "Pavlenko",
+            "Petrenko", "Klymenko", "Levchenko", "Polishchuk", "Tkachuk"};
+    private static final String[][] MARK_TYPES = {{"Exam", "1.00"}, {"Project", "0.50"}, {"Test", "0.30"}, {"Homework", "0.15"}};
+    private static final int[] MARK_TYPE_SHARES = {10, 10, 30, 50};
+
+    static final int GRADES = 12;
+    static final int CLASS_SIZE = 28;
+    static final int BELLS = 7;
+    static final int LESSON_BELLS = 6;
+    static final int DAYS = 5;
+    static final int MAX_LOAD = 22;
+    static final int THEMES_PER_QUARTER = 2;
+    static final double MARK_RATE = 0.15;
+    static final double SKIP_RATE = 0.01;
+
+    private final int pupils;
+    private final int years;
+    private final int firstYear;
+    private final Random random;
+
+    private final Map<String, CsvTable> tables = new LinkedHashMap<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Kind, List<Integer>> teachers = new HashMap<>();
+    private final Map<Integer, Integer> rooms = new HashMap<>();
+    private final Map<Kind, int[]> subjects = new HashMap<>();
+    private final List<Pupil> school = new ArrayList<>();
+    private Map<Integer, Set<Integer>> taughtSlots = new HashMap<>();
+
+    // pupils is the number of pupils at school in any one year, firstYear the calendar year the first school year
+    // starts in.
+    public SchoolDataGenerator(int pupils, int years, int firstYear, long seed) {
+        if (pupils < GRADES || years <= 0)
+            throw new IllegalArgumentException("A school needs at least " + GRADES + " pupils and one year.");
+        this.pupils = pupils;
+        this.years = years;
+        this.firstYear = firstYear;
+        this.random = new Random(seed);
+    }
+
+    // The years that end with the current school year, with the seed from school.gen.seed.
+    static SchoolDataGenerator upToNow(int pupils, int years) {
+        LocalDate today = LocalDate.now();
+        int current = today.getMonthValue() < 7 ? today.getYear() - 1 : today.getYear();
+        return new SchoolDataGenerator(pupils, years, Integer.getInteger("school.gen.firstYear", current - years + 1),
+                Long.getLong("school.gen.seed", 1L));
+    }
+
+    // Writes the CSV files and returns the number of rows of every table.
+    Map<String, Long> write(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            open(directory);
+            writeFixed();
+            int perGrade = pupils / GRADES;
+            int letters = (perGrade + CLASS_SIZE - 1) / CLASS_SIZE;
+            for (int grade = 1; grade <= GRADES; grade++)
+                enrol(perGrade, letters, firstYear, grade);
+            for (int year = firstYear; year < firstYear + years; year++) {
+                if (year > firstYear)
+                    enrol(perGrade, letters, year, 1);
+                writeYear(year);
+            }
+            Map<String, Long> rows = new LinkedHashMap<>();
+            for (CsvTable table : tables.values()) {
+                table.close();
+                rows.put(table.name, table.rows);
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (CsvTable table : tables.values()) {
+                try {
+                    table.close();
+                } catch (IOException ignore) {
+                }
+            }
+            tables.clear();
+        }
+    }
+
+    // Generates into a temporary directory and imports it into a database whose school tables are still empty.
+    List<CopyImporter.TableReport> load(Database db) {
+        boolean empty = db.query(conn -> {
+            try (Statement st = conn.createStatement()) {
+                ResultSet res = st.executeQuery("SELECT NOT EXISTS(SELECT FROM pupils) AND NOT EXISTS(SELECT FROM quarters)");
+                res.next();
+                return res.getBoolean(1);
+            }
+        });
+        if (!empty)
+            throw new IllegalStateException("The database already has school data, load create.sql without its data block.");
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("school-data");
+            write(directory);
+            return new CopyImporter(db).importDirectory(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (directory != null)
+                delete(directory);
+        }
+    }
+
+    // create.sql without the sample data of its data block.
+    static String schemaOnly(String createSql) {
+        int begin = createSql.indexOf("--data final block");
+        int end = createSql.indexOf("--data final block end");
+        if (begin < 0 || end < 0)
+            return createSql;
+        return createSql.substring(0, begin) + createSql.substring(end + "--data final block end".length());
+    }
+
+    private void open(Path directory) throws IOException {
+        table(directory, "quarters", "quarter_id,begin_date,end_date");
+        table(directory, "holidays", "holidays_id,begin_date,end_date");
+        table(directory, "bell_schedule_history", "bell_order,begin_time,end_time,change_date");
+        table(directory, "mark_types", "type_id,type_name");
+        table(directory, "type_weights_history", "type_id,change_date,weight");
+        table(directory, "posts", "post_id,title");
+        table(directory, "employees", "employee_id,first_name,last_name");
+        table(directory, "employees_history", "employee_id,post_id,begin_time");
+        table(directory, "salary_history", "employee_id,salary,change_time");
+        table(directory, "rooms", "room_id,title,room_type,seats");
+        table(directory, "subjects", "subject_id,title,mandatory");
+        table(directory, "pupils", "pupil_id,first_name,last_name,date_of_birth");
+        table(directory, "classes", "class_id,title,study_year");
+        table(directory, "class_history", "pupil_id,class_id,change_time");
+        table(directory, "class_teacher_history", "class_id,teacher_id,change_time");
+        table(directory, "subject_to_class_certificate", "subject_id,class_id");
+        table(directory, "groups", "group_id,title,class_id,subject_id");
+        table(directory, "groups_history", "pupil_id,group_id,begin_time,end_time");
+        table(directory, "themes", "theme_id,title,subject_id,lessons_length,theme_order,quarter_id");
+        table(directory, "schedule_history", "schedule_history_id,teacher_id,room_id,subject_id,class_id,is_odd_week,week_day,bell_order,change_date");
+        table(directory, "groups_to_schedule", "group_id,event_in_schedule_id");
+        table(directory, "events", "event_id,room_id,teacher_id,theme_id,class_id,event_date,event_bell");
+        table(directory, "groups_to_events", "group_id,event_id,event_date");
+        table(directory, "skips", "skip_id,pupil_id,event_id,event_date");
+        table(directory, "marks", "mark_id,pupil_id,event_id,event_date,mark,type_id");
+        table(directory, "excuses", "excuse_id,pupil_id,reason,begin_date,begin_bell,end_date,end_bell");
+    }
+
+    private void table(Path directory, String name, String header) throws IOException {
+        tables.put(name, new CsvTable(name, directory.resolve(name + ".csv"), header));
+    }
+
+    private void row(String table, Object... values) throws IOException {
+        tables.get(table).row(values);
+    }
+
+    private int nextId(String table) {
+        return ids.merge(table, 1, Integer::sum);
+    }
+
+    private void writeFixed() throws IOException {
+        LocalDate start = LocalDate.of(firstYear, 1, 1);
+        for (int bell = 1; bell <= BELLS; bell++) {
+            int begin = 8 * 60 + (bell - 1) * 55;
+            row("bell_schedule_history", bell, time(begin), time(begin + 45), start);
+        }
+        for (int type = 0; type < MARK_TYPES.length; type++) {
+            row("mark_types", type + 1, MARK_TYPES[type][0]);
+            row("type_weights_history", type + 1, LocalDate.of(firstYear, 8, 1), MARK_TYPES[type][1]);
+        }
+        row("posts", 1, "Director");
+        row("posts", 2, "Teacher");
+        hire(1, firstYear);
+        for (int grade = 1; grade <= GRADES; grade++) {
+            for (Kind kind : KINDS) {
+                int id = nextId("subjects");
+                subjects.computeIfAbsent(kind, k -> new int[GRADES + 1])[grade] = id;
+                row("subjects", id, kind.title() + " " + grade, kind.mandatory());
+            }
+        }
+    }
+
+    private int hire(int post, int year) throws IOException {
+        int id = nextId("employees");
+        String hired = LocalDate.of(year, 8, 1) + " 10:00:00";
+        row("employees", id, pick(FIRST_NAMES), pick(LAST_NAMES));
+        row("employees_history", id, post, hired);
+        row("salary_history", id, 3000 + random.nextInt(40) * 100, hired);
+        return id;
+    }
+
+    private void enrol(int count, int letters, int year, int grade) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Pupil pupil = new Pupil(nextId("pupils"), year, grade, i % letters, (i / letters) % 2,
+                    Math.max(3, Math.min(11, 7.5 + random.nextGaussian() * 2)));
+            LocalDate born = LocalDate.of(year - 6 - grade, 1, 1).plusDays(random.nextInt(365));
+            row("pupils", pupil.id(), pick(FIRST_NAMES), pick(LAST_NAMES), born);
+            school.add(pupil);
+        }
+    }
+
+    private void writeYear(int year) throws IOException {
+        List<Quarter> quarters = writeCalendar(year);
+        String moved = LocalDate.of(year, 8, 31) + " 12:00:00";
+        String joined = LocalDate.of(year, 8, 31) + " 13:00:00";
+        String left = year + 1 < firstYear + years ? LocalDate.of(year + 1, 8, 31) + " 12:00:00" : null;
+
+        Map<Integer, SchoolClass> byGradeAndLetter = new HashMap<>();
+        List<SchoolClass> classes = new ArrayList<>();
+        for (Pupil pupil : school) {
+            int grade = pupil.grade(year);
+            if (pupil.entryYear() > year || grade > GRADES)
+                continue;
+            SchoolClass schoolClass = byGradeAndLetter.get(grade * 1000 + pupil.letter());
+            if (schoolClass == null) {
+                schoolClass = new SchoolClass(nextId("classes"), grade, pupil.letter(), new ArrayList<>(), new HashMap<>());
+                byGradeAndLetter.put(grade * 1000 + pupil.letter(), schoolClass);
+                classes.add(schoolClass);
+            }
+            schoolClass.pupils().add(pupil);
+        }
+        classes.sort(Comparator.comparingInt(SchoolClass::id));
+        for (SchoolClass schoolClass : classes) {
+            String title = letter(schoolClass.letter()) + " " + year;
+            row("classes", schoolClass.id(), title, schoolClass.grade());
+            for (Kind kind : KINDS) {
+                int subject = subjects.get(kind)[schoolClass.grade()];
+                if (kind.mandatory())
+                    row("subject_to_class_certificate", subject, schoolClass.id());
+                int[] groups = new int[2];
+                for (int half = 0; half < 2; half++) {
+                    groups[half] = nextId("groups");
+                    row("groups", groups[half], kind.title() + " " + schoolClass.grade() + title + " " + (half + 1),
+                            schoolClass.id(), subject);
+                }
+                schoolClass.groups().put(kind, groups);
+            }
+            for (Pupil pupil : schoolClass.pupils()) {
+                row("class_history", pupil.id(), schoolClass.id(), moved);
+                for (Kind kind : KINDS)
+                    row("groups_history", pupil.id(), schoolClass.groups().get(kind)[pupil.half()], joined, left);
+            }
+        }
+
+        int[][][][] themes = writeThemes(year, quarters, classes);
+        List<List<Lesson>> timetable = writeTimetable(year, classes);
+        writeJournal(year, quarters, timetable, themes);
+    }
+
+    private List<Quarter> writeCalendar(int year) throws IOException {
+        LocalDate[][] bounds = {
+                {LocalDate.of(year, 9, 1), LocalDate.of(year, 10, 27)},
+                {LocalDate.of(year, 11, 6), LocalDate.of(year, 12, 23)},
+                {LocalDate.of(year + 1, 1, 9), LocalDate.of(year + 1, 3, 22)},
+                {LocalDate.of(year + 1, 4, 1), LocalDate.of(year + 1, 5, 31)}};
+        List<Quarter> quarters = new ArrayList<>();
+        for (LocalDate[] quarter : bounds) {
+            int id = nextId("quarters");
+            row("quarters", id, quarter[0], quarter[1]);
+            quarters.add(new Quarter(id, quarter[0], quarter[1]));
+        }
+        for (int i = 0; i < quarters.size(); i++) {
+            LocalDate begin = quarters.get(i).end().plusDays(1);
+            LocalDate end = i + 1 < quarters.size() ? quarters.get(i + 1).begin().minusDays(1) : LocalDate.of(year + 1, 8, 31);
+            row("holidays", nextId("holidays"), begin, end);
+        }
+        return quarters;
+    }
+
+    // Two themes per subject and quarter, long enough together for the lessons the quarter has room for.
+    private int[][][][] writeThemes(int year, List<Quarter> quarters, List<SchoolClass> classes) throws IOException {
+        int[][][][] themes = new int[GRADES + 1][KINDS.size()][quarters.size()][THEMES_PER_QUARTER];
+        Set<Integer> grades = new HashSet<>();
+        classes.forEach(schoolClass -> grades.add(schoolClass.grade()));
+        for (int grade : grades) {
+            for (int k = 0; k < KINDS.size(); k++) {
+                Kind kind = KINDS.get(k);
+                for (int q = 0; q < quarters.size(); q++) {
+                    Quarter quarter = quarters.get(q);
+                    long weeks = (quarter.end().toEpochDay() - quarter.begin().toEpochDay() + 7) / 7;
+                    int length = (int) Math.max(1, (kind.hours() * weeks + THEMES_PER_QUARTER - 1) / THEMES_PER_QUARTER);
+                    for (int t = 0; t < THEMES_PER_QUARTER; t++) {
+                        int id = nextId("themes");
+                        int order = ((year - firstYear) * quarters.size() + q) * THEMES_PER_QUARTER + t + 1;
+                        row("themes", id, kind.title() + " " + year + " Q" + (q + 1) + "." + (t + 1),
+                                subjects.get(kind)[grade], length, order, quarter.id());
+                        themes[grade][k][q][t] = id;
+                    }
+                }
+            }
+        }
+        return themes;
+    }
+
+    // Places the weekly lessons of every class greedily: the earliest free bell of a day without that subject yet,
+    // given to the busiest teacher of the subject who is free then, hiring one when nobody is. A teacher's bells
+    // that are not taught this year any more are cleared with rows without a subject.
+    private List<List<Lesson>> writeTimetable(int year, List<SchoolClass> classes) throws IOException {
+        Map<Integer, boolean[]> busy = new HashMap<>();
+        Map<Integer, Integer> load = new HashMap<>();
+        List<List<Lesson>> byDay = new ArrayList<>();
+        for (int day = 0; day < DAYS; day++)
+            byDay.add(new ArrayList<>());
+        Map<Integer, Set<Integer>> taught = new HashMap<>();
+        LocalDate changed = LocalDate.of(year, 8, 31);
+        for (SchoolClass schoolClass : classes) {
+            List<Kind> lessons = new ArrayList<>();
+            for (Kind kind : KINDS)
+                for (int i = 0; i < kind.hours(); i++)
+                    lessons.add(kind);
+            Collections.shuffle(lessons, random);
+            List<Integer> days = new ArrayList<>(List.of(0, 1, 2, 3, 4));
+            Collections.shuffle(days, random);
+            boolean[] taken = new boolean[DAYS * LESSON_BELLS];
+            Map<Kind, Set<Integer>> kindDays = new HashMap<>();
+            Integer classTeacher = null;
+            for (Kind kind : lessons) {
+                Set<Integer> onDays = kindDays.computeIfAbsent(kind, k -> new HashSet<>());
+                int slot = -1;
+                Integer teacher = null;
+                for (int pass = 0; pass < 2 && teacher == null; pass++) {
+                    for (int bell = 0; bell < LESSON_BELLS && teacher == null; bell++) {
+                        for (int day : days) {
+                            int candidate = day * LESSON_BELLS + bell;
+                            if (taken[candidate] || (pass == 0 && onDays.contains(day)))
+                                continue;
+                            teacher = freeTeacher(kind, candidate, busy, load);
+                            if (slot < 0)
+                                slot = candidate;
+                            if (teacher != null) {
+                                slot = candidate;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (teacher == null) {
+                    teacher = hire(2, year);
+                    teachers.computeIfAbsent(kind, k -> new ArrayList<>()).add(teacher);
+                    rooms.put(teacher, nextId("rooms"));
+                    row("rooms", rooms.get(teacher), "Room " + (100 + rooms.get(teacher)), "common", CLASS_SIZE + 2);
+                }
+                taken[slot] = true;
+                onDays.add(slot / LESSON_BELLS);
+                busy.computeIfAbsent(teacher, t -> new boolean[DAYS * LESSON_BELLS])[slot] = true;
+                load.merge(teacher, 1, Integer::sum);
+                taught.computeIfAbsent(teacher, t -> new HashSet<>()).add(slot);
+                if (classTeacher == null)
+                    classTeacher = teacher;
+                Lesson lesson = new Lesson(schoolClass, kind, slot, teacher);
+                byDay.get(slot / LESSON_BELLS).add(lesson);
+                int id = nextId("schedule_history");
+                row("schedule_history", id, teacher, rooms.get(teacher), subjects.get(kind)[schoolClass.grade()],
+                        schoolClass.id(), null, weekDay(slot), slot % LESSON_BELLS + 1, changed);
+                for (int group : schoolClass.groups().get(kind))
+                    row("groups_to_schedule", group, id);
+            }
+            row("class_teacher_history", schoolClass.id(), classTeacher, changed + " 11:00:00");
+        }
+        for (Map.Entry<Integer, Set<Integer>> previous : taughtSlots.entrySet())
+            for (int slot : previous.getValue())
+                if (!taught.getOrDefault(previous.getKey(), Set.of()).contains(slot))
+                    row("schedule_history", nextId("schedule_history"), previous.getKey(), null, null, null, null,
+                            weekDay(slot), slot % LESSON_BELLS + 1, changed);
+        taughtSlots = taught;
+        return byDay;
+    }
+
+    private Integer freeTeacher(Kind kind, int slot, Map<Integer, boolean[]> busy, Map<Integer, Integer> load) {
+        Integer best = null;
+        for (int teacher : teachers.getOrDefault(kind, List.of())) {
+            int taught = load.getOrDefault(teacher, 0);
+            boolean[] slots = busy.get(teacher);
+            if (taught >= MAX_LOAD || (slots != null && slots[slot]))
+                continue;
+            if (best == null || taught > load.getOrDefault(best, 0))
+                best = teacher;
+        }
+        return best;
+    }
+
+    // One lesson per timetable row and school day. Pupils are ill for a few days now and then, which makes them
+    // skip every lesson of those days with an excuse; the occasional other skip has none.
+    private void writeJournal(int year, List<Quarter> quarters, List<List<Lesson>> timetable, int[][][][] themes) throws IOException {
+        List<LocalDate> schoolDays = new ArrayList<>();
+        for (Quarter quarter : quarters)
+            for (LocalDate day = quarter.begin(); !day.isAfter(quarter.end()); day = day.plusDays(1))
+                if (day.getDayOfWeek().getValue() <= DAYS)
+                    schoolDays.add(day);
+        Map<LocalDate, Set<Integer>> ill = new HashMap<>();
+        for (Pupil pupil : school) {
+            int grade = pupil.grade(year);
+            if (pupil.entryYear() > year || grade > GRADES)
+                continue;
+            int episodes = random.nextInt(4);
+            for (int i = 0; i < episodes; i++) {
+                int first = random.nextInt(schoolDays.size());
+                int last = Math.min(schoolDays.size() - 1, first + random.nextInt(4));
+                for (int day = first; day <= last; day++)
+                    ill.computeIfAbsent(schoolDays.get(day), d -> new HashSet<>()).add(pupil.id());
+                LocalDate begin = schoolDays.get(first);
+                LocalDate end = schoolDays.get(last);
+                if (begin.equals(end))
+                    row("excuses", nextId("excuses"), pupil.id(), "Illness", begin, 1, end, LESSON_BELLS);
+                else
+                    row("excuses", nextId("excuses"), pupil.id(), "Illness", begin, null, end, null);
+            }
+        }
+
+        Map<Integer, Integer> given = new HashMap<>();
+        int quarterIndex = 0;
+        for (LocalDate day : schoolDays) {
+            while (day.isAfter(quarters.get(quarterIndex).end())) {
+                quarterIndex++;
+                given.clear();
+            }
+            Set<Integer> illToday = ill.getOrDefault(day, Set.of());
+            for (Lesson lesson : timetable.get(day.getDayOfWeek().getValue() - 1)) {
+                SchoolClass schoolClass = lesson.schoolClass();
+                int k = KINDS.indexOf(lesson.kind());
+                int held = given.merge(schoolClass.id() * KINDS.size() + k, 1, Integer::sum) - 1;
+                int[] quarterThemes = themes[schoolClass.grade()][k][quarterIndex];
+                int part = Math.min(THEMES_PER_QUARTER - 1, held * THEMES_PER_QUARTER / Math.max(1, lessonsInQuarter(lesson, quarters.get(quarterIndex))));
+                int event = nextId("events");
+                row("events", event, rooms.get(lesson.teacher()), lesson.teacher(), quarterThemes[part], schoolClass.id(),
+                        day, lesson.slot() % LESSON_BELLS + 1);
+                for (int group : schoolClass.groups().get(lesson.kind()))
+                    row("groups_to_events", group, event, day);
+                if (!lesson.kind().mandatory())
+                    continue;
+                for (Pupil pupil : schoolClass.pupils()) {
+                    if (illToday.contains(pupil.id()) || random.nextDouble() < SKIP_RATE) {
+                        row("skips", nextId("skips"), pupil.id(), event, day);
+                    } else if (random.nextDouble() < MARK_RATE) {
+                        int mark = (int) Math.round(pupil.ability() + random.nextGaussian() * 1.5);
+                        row("marks", nextId("marks"), pupil.id(), event, day, Math.max(1, Math.min(12, mark)), markType());
+                    }
+                }
+            }
+        }
+    }
+
+    private static int lessonsInQuarter(Lesson lesson, Quarter quarter) {
+        long weeks = (quarter.end().toEpochDay() - quarter.begin().toEpochDay() + 7) / 7;
+        return (int) (lesson.kind().hours() * weeks);
+    }
+
+    private int markType() {
+        int roll = random.nextInt(100);
+        for (int type = 0; type < MARK_TYPE_SHARES.length; type++) {
+            roll -= MARK_TYPE_SHARES[type];
+            if (roll < 0)
+                return type + 1;
+        }
+        return MARK_TYPE_SHARES.length;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String letter(int letter) {
+        return letter < 26 ? String.valueOf((char) ('A' + letter)) : (char) ('A' + letter % 26) + String.valueOf(letter / 26);
+    }
+
+    private static String weekDay(int slot) {
+        return DayOfWeek.of(slot / LESSON_BELLS + 1).getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+    }
+
+    private static String time(int minutes) {
+        return String.format("%02d:%02d:00", minutes / 60, minutes % 60);
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList())
+                Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static final class CsvTable implements Closeable {
+
+        private final String name;
+        private final BufferedWriter out;
+        private long rows;
+        private boolean closed;
+
+        CsvTable(String name, Path file, String header) throws IOException {
+            this.name = name;
+            this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            out.write(header);
+            out.write('\n');
+        }
+
+        void row(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    out.write(',');
+                if (values[i] != null)
+                    out.write(escape(values[i].toString()));
+            }
+            out.write('\n');
+            rows++;
+        }
+
+        private static String escape(String value) {
+            if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0)
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    // Usage: SchoolDataGenerator <pupils> <years> [<directory>]
+    public static void main(String[] args) {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Usage: SchoolDataGenerator <pupils> <years> [<directory to write the CSV files to>]");
+            System.exit(2);
+        }
+        SchoolDataGenerator generator = upToNow(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        long start = System.nanoTime();
+        if (args.length == 3) {
+            generator.write(Path.of(args[2])).forEach((table, rows) -> System.out.printf("%-28s %9d rows%n", table, rows));
+            System.out.printf("written in %.2f s%n", (System.nanoTime() - start) / 1e9);
+            return;
+        }
+        try (ConnectionPool pool = ConnectionPool.fromSystemProperties()) {
+            List<CopyImporter.TableReport> reports = generator.load(new Database(pool));
+            reports.forEach(System.out::println);
+            long rows = reports.stream().mapToLong(CopyImporter.TableReport::rows).sum();
+            System.out.printf("%d rows in %.2f s%n", rows, (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
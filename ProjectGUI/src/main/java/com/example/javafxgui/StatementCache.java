@@ -0,0 +1,203 @@
+package com.example.javafxgui;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the prepared statements of one pooled connection open between units of work, keyed by their SQL. The
+// repositories still prepare and close a statement per call: prepareStatement(String) hands out the statement
+// left by the previous call and close() gives it back, so a lookup that runs on every picker change keeps its
+// statement, and after pgjdbc's prepare threshold its server-side plan. A statement that is already handed out
+// is not shared: a nested call with the same SQL gets a statement of its own, closed when it is given back. A
+// statement goes back with its batch cleared and the fetch size, row limit and timeout it was prepared with, so
+// settings one caller made do not leak into the next.
+class StatementCache {
+
+    record Stats(long hits, long misses, long evictions) {
+
+        double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions",
+                    hits, misses, hitRate() * 100, evictions);
+        }
+    }
+
+    private record Settings(int fetchSize, int fetchDirection, int maxRows, int maxFieldSize, int queryTimeout) {
+
+        static Settings of(PreparedStatement st) throws SQLException {
+            return new Settings(st.getFetchSize(), st.getFetchDirection(), st.getMaxRows(), st.getMaxFieldSize(),
+                    st.getQueryTimeout());
+        }
+
+        void restore(PreparedStatement st) throws SQLException {
+            if (st.getFetchSize() != fetchSize)
+                st.setFetchSize(fetchSize);
+            if (st.getFetchDirection() != fetchDirection)
+                st.setFetchDirection(fetchDirection);
+            if (st.getMaxRows() != maxRows)
+                st.setMaxRows(maxRows);
+            if (st.getMaxFieldSize() != maxFieldSize)
+                st.setMaxFieldSize(maxFieldSize);
+            if (st.getQueryTimeout() != queryTimeout)
+                st.setQueryTimeout(queryTimeout);
+        }
+    }
+
+    private record Idle(PreparedStatement st, Settings settings) {
+    }
+
+    // Shared by the caches of all connections of a pool.
+    static class Counters {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        Stats snapshot() {
+            return new Stats(hits.get(), misses.get(), evictions.get());
+        }
+    }
+
+    private final Connection conn;
+    private final int capacity;
+    private final Counters counters;
+    private final LinkedHashMap<String, Idle> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    private StatementCache(Connection conn, int capacity, Counters counters) {
+        this.conn = conn;
+        this.capacity = capacity;
+        this.counters = counters;
+    }
+
+    static Connection wrap(Connection conn, int capacity, Counters counters) {
+        StatementCache cache = new StatementCache(conn, capacity, counters);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                cache.new ConnectionHandler());
+    }
+
+    private PreparedStatement checkOut(String sql) throws SQLException {
+        Idle cached = idle.remove(sql);
+        if (cached != null) {
+            counters.hits.incrementAndGet();
+        } else {
+            counters.misses.incrementAndGet();
+            PreparedStatement st = conn.prepareStatement(sql);
+            cached = new Idle(st, Settings.of(st));
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(sql, cached));
+    }
+
+    private void checkIn(String sql, Idle returned) throws SQLException {
+        PreparedStatement st = returned.st();
+        if (idle.containsKey(sql) || conn.isClosed() || st.isClosed() || st.isCloseOnCompletion()) {
+            st.close();
+            return;
+        }
+        ResultSet res = st.getResultSet();
+        if (res != null)
+            res.close();
+        st.clearParameters();
+        st.clearBatch();
+        returned.settings().restore(st);
+        idle.put(sql, returned);
+        Iterator<Idle> eldest = idle.values().iterator();
+        while (idle.size() > capacity) {
+            Idle evicted = eldest.next();
+            eldest.remove();
+            counters.evictions.incrementAndGet();
+            evicted.st().close();
+        }
+    }
+
+    private void closeAll() {
+        for (Idle cached : idle.values()) {
+            try {
+                cached.st().close();
+            } catch (SQLException ignore) {
+            }
+        }
+        idle.clear();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (method.getParameterCount() == 1)
+                        return checkOut((String) args[0]);
+                    break;
+                case "close":
+                    closeAll();
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "cached " + conn;
+            }
+            return StatementCache.invoke(conn, method, args);
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final String sql;
+        private final Idle cached;
+        private final PreparedStatement st;
+        private boolean returned;
+
+        StatementHandler(String sql, Idle cached) {
+            this.sql = sql;
+            this.cached = cached;
+            this.st = cached.st();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        checkIn(sql, cached);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || st.isClosed();
+                case "getConnection":
+                    return conn;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+            }
+            if (returned)
+                throw new SQLException("This statement has been closed.");
+            return StatementCache.invoke(st, method, args);
+        }
+    }
+}
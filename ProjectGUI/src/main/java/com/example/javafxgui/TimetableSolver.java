@@ -0,0 +1,813 @@
+package com.example.javafxgui;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Plans the weekly timetable of the whole school from scratch and writes it to schedule_history as one batch that
+// takes effect on a given date. What has to be taught is read from the database: every class gets the subjects of
+// its certificate and the groups of a non-mandatory subject get theirs, as many lessons every two weeks as the themes
+// of the quarter need, so a subject with an odd number of them has a lesson in odd or even weeks only. A subject with
+// no themes in the quarter keeps the hours it has in the timetable in effect. Lessons go to teachers who have taught
+// the subject before and to rooms with a seat for everybody. The plan is searched for by simulated annealing over
+// bells, teachers and rooms, one independent search per core, and the best one wins.
+public class TimetableSolver {
+
+    static final List<String> WEEK_DAYS = List.of("Monday", "Tuesday", "Wednesday", "Thursday", "Friday");
+
+    // Lessons taken by the same teacher, in the same room or by the same pupils at once cost HARD each; a lesson
+    // costs LATE for every bell before it and a subject taught to the same pupils more than once a day costs REPEAT.
+    static final int HARD = 1000;
+    static final int LATE = 1;
+    static final int REPEAT = 20;
+    static final double HOT = 50;
+    static final double COLD = 0.5;
+    static final long COOLING = 8_000;
+
+    private static final int WEEKLY = 0;
+    private static final int ODD = 1;
+    private static final int EVEN = 2;
+
+    // Rooms a teacher has at a bell in odd and in even weeks, before and after the change.
+    private static final int FREE = -2;
+    private static final int NO_ROOM = -1;
+
+    // A class, a split of a class or the groups of a non-mandatory subject, always taught by the same teacher.
+    // teachers and rooms hold indexes into Problem.teacherIds and Problem.roomIds.
+    record Unit(Integer classId, int subjectId, int[] groups, int size, int[] teachers, int[] rooms) {
+    }
+
+    record Plan(int[] slot, int[] parity, int[] room, int[] teacher, int conflicts, int penalty, long iterations) {
+    }
+
+    record Report(int lessons, int cleared, int conflicts, int penalty, long iterations, int threads, double seconds,
+                  List<String> notes) {
+
+        @Override
+        public String toString() {
+            return String.format("%d lessons, %d bells cleared, %d conflicts, penalty %d, %d iterations on %d threads in %.1f s",
+                    lessons, cleared, conflicts, penalty, iterations, threads, seconds);
+        }
+    }
+
+    private record Key(Integer classId, int subjectId) {
+    }
+
+    private record Bell(int teacherId, String weekDay, int bellOrder) {
+    }
+
+    private record Group(int id, Integer classId, int subjectId, int[] pupils, Set<Integer> lessons) {
+    }
+
+    static final class Problem {
+        final LocalDate changeDate;
+        final int[] bells;
+        final int slots;
+        final int[] teacherIds;
+        final int[] roomIds;
+        final int[] seats;
+        final List<Unit> units = new ArrayList<>();
+        final List<String> notes = new ArrayList<>();
+        final Map<Bell, int[]> previous = new HashMap<>();
+        int resources;
+        int[][] unitResources;
+        int[] lessonUnit;
+        boolean[] weekly;
+        int[][] unitLessons;
+        int[][] resourceLessons;
+
+        Problem(LocalDate changeDate, int[] bells, int[] teacherIds, int[] roomIds, int[] seats) {
+            this.changeDate = changeDate;
+            this.bells = bells;
+            this.slots = WEEK_DAYS.size() * bells.length;
+            this.teacherIds = teacherIds;
+            this.roomIds = roomIds;
+            this.seats = seats;
+        }
+
+        int lessons() {
+            return lessonUnit.length;
+        }
+    }
+
+    private final Database db;
+    private final int threads;
+    private final Duration budget;
+
+    public TimetableSolver(Database db, int threads, Duration budget) {
+        this.db = db;
+        this.threads = threads;
+        this.budget = budget;
+    }
+
+    // Plans the timetable that starts on changeDate and commits it, unless some conflict is left.
+    Report run(LocalDate changeDate) {
+        long start = System.nanoTime();
+        Problem problem = load(changeDate);
+        Plan plan = solve(problem);
+        int cleared = plan.conflicts() == 0 ? commit(problem, plan) : 0;
+        return new Report(problem.lessons(), cleared, plan.conflicts(), plan.penalty(), plan.iterations(), threads,
+                (System.nanoTime() - start) / 1e9, problem.notes);
+    }
+
+    Problem load(LocalDate changeDate) {
+        // Memberships that begin on the change date count, as a new school year is usually set up on its eve.
+        Timestamp at = Timestamp.valueOf(changeDate.plusDays(1).atStartOfDay());
+        return db.query("timetable.load", conn -> {
+            int[] bells = ints(conn, "SELECT bell_order FROM get_bells_schedule(?)", changeDate);
+            Map<Integer, Set<Integer>> qualified = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT DISTINCT teacher_id, subject_id FROM schedule_history " +
+                                                                  "WHERE subject_id IS NOT NULL AND is_working(teacher_id, ?)")) {
+                st.setTimestamp(1, at);
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    qualified.computeIfAbsent(res.getInt(2), subject -> new TreeSet<>()).add(res.getInt(1));
+            }
+            int[] teacherIds = qualified.values().stream().flatMap(Set::stream).distinct().sorted().mapToInt(Integer::intValue).toArray();
+            List<int[]> rooms = new ArrayList<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT room_id, seats FROM rooms ORDER BY room_id")) {
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    rooms.add(new int[]{res.getInt(1), res.getInt(2)});
+            }
+            if (bells.length == 0 || teacherIds.length == 0 || rooms.isEmpty())
+                throw new IllegalStateException("A timetable on " + changeDate + " needs bells, rooms and teachers who have taught before.");
+            Problem problem = new Problem(changeDate, bells, teacherIds,
+                    rooms.stream().mapToInt(room -> room[0]).toArray(), rooms.stream().mapToInt(room -> room[1]).toArray());
+
+            double weeks;
+            Map<Integer, Integer> themeLessons = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT quarter_id, begin_date, end_date FROM quarters " +
+                                                                  "WHERE end_date >= ? ORDER BY begin_date LIMIT 1")) {
+                st.setDate(1, Date.valueOf(changeDate));
+                ResultSet res = st.executeQuery();
+                if (!res.next())
+                    throw new IllegalStateException("No quarter ends after " + changeDate + ".");
+                int quarter = res.getInt(1);
+                weeks = Math.ceil((res.getDate(3).toLocalDate().toEpochDay() - res.getDate(2).toLocalDate().toEpochDay() + 1) / 7.0);
+                try (PreparedStatement themes = conn.prepareStatement("SELECT subject_id, sum(lessons_length) FROM themes " +
+                                                                          "WHERE quarter_id = ? GROUP BY subject_id")) {
+                    themes.setInt(1, quarter);
+                    ResultSet sums = themes.executeQuery();
+                    while (sums.next())
+                        themeLessons.put(sums.getInt(1), sums.getInt(2));
+                }
+            }
+
+            Map<Key, Integer> taughtHours = new HashMap<>();
+            // A lesson of both weeks is resolved once for odd and once for even weeks, so every row counts once.
+            try (PreparedStatement st = conn.prepareStatement("SELECT class_id, subject_id, count(*) " +
+                                                                  "FROM (SELECT DISTINCT class_id, subject_id, week_day, bell_order, is_odd_week FROM effective_schedule " +
+                                                                  "WHERE valid @> ?::date AND subject_id IS NOT NULL AND is_odd_week IS NOT NULL) s GROUP BY class_id, subject_id")) {
+                st.setDate(1, Date.valueOf(changeDate));
+                ResultSet res = st.executeQuery();
+                while (res.next()) {
+                    int classId = res.getInt(1);
+                    taughtHours.put(new Key(res.wasNull() ? null : classId, res.getInt(2)), res.getInt(3));
+                }
+            }
+
+            // Pupils who left keep their last class, as class_history has no way to say otherwise, so a pupil whose
+            // group memberships have all ended does not count.
+            Map<Integer, List<Integer>> classPupils = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT DISTINCT ON (c.pupil_id) c.pupil_id, c.class_id FROM class_history c " +
+                                                                  "WHERE c.change_time <= ? AND (NOT EXISTS(SELECT FROM groups_history h WHERE h.pupil_id = c.pupil_id) " +
+                                                                  "OR EXISTS(SELECT FROM groups_history h WHERE h.pupil_id = c.pupil_id AND h.membership @> ?::timestamp)) " +
+                                                                  "ORDER BY c.pupil_id, c.change_time DESC")) {
+                st.setTimestamp(1, at);
+                st.setTimestamp(2, at);
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    classPupils.computeIfAbsent(res.getInt(2), group -> new ArrayList<>()).add(res.getInt(1));
+            }
+            Map<Integer, Boolean> mandatory = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT subject_id, mandatory FROM subjects")) {
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    mandatory.put(res.getInt(1), res.getBoolean(2));
+            }
+            Set<Key> certificates = new HashSet<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT class_id, subject_id FROM subject_to_class_certificate")) {
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    certificates.add(new Key(res.getInt(1), res.getInt(2)));
+            }
+            Map<Key, List<Group>> groups = new TreeMap<>(Comparator.comparing(Key::classId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparingInt(Key::subjectId));
+            for (Key certificate : certificates)
+                if (classPupils.containsKey(certificate.classId()))
+                    groups.put(certificate, new ArrayList<>());
+            Map<Integer, Set<Integer>> taughtIn = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("SELECT DISTINCT gs.group_id, gs.event_in_schedule_id FROM groups_to_schedule gs " +
+                                                                  "JOIN effective_schedule e ON e.schedule_history_id = gs.event_in_schedule_id " +
+                                                                  "WHERE e.valid @> ?::date AND e.subject_id IS NOT NULL")) {
+                st.setDate(1, Date.valueOf(changeDate));
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    taughtIn.computeIfAbsent(res.getInt(1), group -> new HashSet<>()).add(res.getInt(2));
+            }
+            // Groups without a subject are not tied to any lesson, so the timetable leaves them alone.
+            try (PreparedStatement st = conn.prepareStatement("SELECT g.group_id, g.class_id, g.subject_id, array_remove(array_agg(h.pupil_id), NULL) " +
+                                                                  "FROM \"groups\" g LEFT JOIN groups_history h ON h.group_id = g.group_id AND h.membership @> ?::timestamp " +
+                                                                  "WHERE g.subject_id IS NOT NULL GROUP BY g.group_id ORDER BY g.group_id")) {
+                st.setTimestamp(1, at);
+                ResultSet res = st.executeQuery();
+                while (res.next()) {
+                    int classId = res.getInt(2);
+                    Integer ofClass = res.wasNull() ? null : classId;
+                    int[] pupils = Arrays.stream((Integer[]) res.getArray(4).getArray()).mapToInt(Integer::intValue).toArray();
+                    Key key = new Key(ofClass, res.getInt(3));
+                    if (ofClass == null ? pupils.length > 0 : classPupils.containsKey(ofClass))
+                        groups.computeIfAbsent(key, k -> new ArrayList<>()).add(new Group(res.getInt(1), ofClass, key.subjectId(), pupils,
+                                taughtIn.getOrDefault(res.getInt(1), Set.of())));
+                }
+            }
+
+            List<Integer> lessonUnit = new ArrayList<>();
+            List<Boolean> weekly = new ArrayList<>();
+            List<Integer> unitClass = new ArrayList<>();
+            Map<Integer, List<Integer>> pupilUnits = new HashMap<>();
+            int maxSeats = Arrays.stream(problem.seats).max().orElse(0);
+            List<String> unplanned = new ArrayList<>();
+            for (Map.Entry<Key, List<Group>> entry : groups.entrySet()) {
+                Key key = entry.getKey();
+                boolean isMandatory = mandatory.getOrDefault(key.subjectId(), false);
+                if (isMandatory != (key.classId() != null && certificates.contains(key))) {
+                    problem.notes.add("Skipped " + key + ": a " + (isMandatory ? "mandatory subject missing from" : "non-mandatory subject listed in") + " the certificate.");
+                    if (certificates.contains(key))
+                        unplanned.add(key.toString());
+                    continue;
+                }
+                int perTwoWeeks = (int) Math.round(2 * themeLessons.getOrDefault(key.subjectId(), 0) / weeks);
+                if (perTwoWeeks == 0 && taughtHours.containsKey(key)) {
+                    perTwoWeeks = taughtHours.get(key);
+                    problem.notes.add("No themes of " + key + " in the quarter, kept the lessons it has now: " + perTwoWeeks + " every two weeks.");
+                }
+                if (perTwoWeeks == 0) {
+                    problem.notes.add("Skipped " + key + ": no themes in the quarter and no lessons in the timetable in effect.");
+                    if (certificates.contains(key))
+                        unplanned.add(key.toString());
+                    continue;
+                }
+                List<Group> of = entry.getValue();
+                Set<Integer> pupils = new HashSet<>();
+                of.forEach(group -> Arrays.stream(group.pupils()).forEach(pupils::add));
+                if (of.isEmpty())
+                    pupils.addAll(classPupils.get(key.classId()));
+                List<List<Group>> splits = splits(of, maxSeats);
+                for (List<Group> split : splits) {
+                    Set<Integer> taught = new HashSet<>();
+                    split.forEach(group -> Arrays.stream(group.pupils()).forEach(taught::add));
+                    if (split.isEmpty())
+                        taught.addAll(pupils);
+                    int unit = problem.units.size();
+                    Unit created = new Unit(key.classId(), key.subjectId(), split.stream().mapToInt(Group::id).toArray(),
+                            taught.size(), teachersFor(problem, qualified.get(key.subjectId())), roomsFor(problem, taught.size()));
+                    problem.units.add(created);
+                    unitClass.add(key.classId() != null && splits.size() == 1 ? key.classId() : null);
+                    for (int pupil : taught)
+                        pupilUnits.computeIfAbsent(pupil, p -> new ArrayList<>()).add(unit);
+                    for (int i = 0; i < perTwoWeeks / 2; i++) {
+                        lessonUnit.add(unit);
+                        weekly.add(true);
+                    }
+                    if (perTwoWeeks % 2 == 1) {
+                        lessonUnit.add(unit);
+                        weekly.add(false);
+                    }
+                    if (problem.seats[created.rooms()[0]] < taught.size())
+                        problem.notes.add("No room seats the " + taught.size() + " pupils of " + key + ".");
+                }
+            }
+            // Committing such a plan would take the missing subjects off the timetable of their classes.
+            if (!unplanned.isEmpty())
+                throw new IllegalStateException("A timetable on " + changeDate + " would leave out " + unplanned.size() +
+                                                " subjects of class certificates: " + String.join(", ", unplanned) + ".");
+            if (lessonUnit.isEmpty())
+                throw new IllegalStateException("A timetable on " + changeDate + " would have no lessons.");
+            problem.lessonUnit = lessonUnit.stream().mapToInt(Integer::intValue).toArray();
+            problem.weekly = new boolean[lessonUnit.size()];
+            for (int l = 0; l < problem.weekly.length; l++)
+                problem.weekly[l] = weekly.get(l);
+            resources(problem, pupilUnits.values(), unitClass);
+
+            Set<Integer> bellOrders = new HashSet<>();
+            Arrays.stream(bells).forEach(bellOrders::add);
+            try (PreparedStatement st = conn.prepareStatement("SELECT DISTINCT teacher_id, room_id, week_day::text, bell_order, is_odd_week " +
+                                                                  "FROM effective_schedule WHERE valid @> ?::date AND subject_id IS NOT NULL AND is_odd_week IS NOT NULL")) {
+                st.setDate(1, Date.valueOf(changeDate));
+                ResultSet res = st.executeQuery();
+                while (res.next()) {
+                    if (!bellOrders.contains(res.getInt(4)))
+                        continue;
+                    int room = res.getInt(2);
+                    if (res.wasNull())
+                        room = NO_ROOM;
+                    int[] held = problem.previous.computeIfAbsent(new Bell(res.getInt(1), res.getString(3), res.getInt(4)),
+                            bell -> new int[]{FREE, FREE});
+                    held[res.getBoolean(5) ? 0 : 1] = room;
+                }
+            }
+            return problem;
+        });
+    }
+
+    // Pupils who attend the same units form a cohort. A unit takes up the time of its cohorts, and a whole class the
+    // time of the class as well, which keeps its lessons apart even when its groups have no pupils yet.
+    private static void resources(Problem problem, Collection<List<Integer>> pupilUnits, List<Integer> unitClass) {
+        Map<List<Integer>, Integer> cohorts = new HashMap<>();
+        for (List<Integer> units : pupilUnits)
+            cohorts.putIfAbsent(units, cohorts.size());
+        Map<Integer, Integer> classes = new HashMap<>();
+        unitClass.stream().filter(Objects::nonNull).forEach(classId -> classes.putIfAbsent(classId, cohorts.size() + classes.size()));
+        List<Set<Integer>> ofUnit = new ArrayList<>();
+        for (Integer classId : unitClass)
+            ofUnit.add(classId == null ? new TreeSet<>() : new TreeSet<>(Set.of(classes.get(classId))));
+        cohorts.forEach((units, cohort) -> units.forEach(unit -> ofUnit.get(unit).add(cohort)));
+        problem.resources = cohorts.size() + classes.size();
+        problem.unitResources = ofUnit.stream().map(set -> set.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+
+        List<List<Integer>> unitLessons = new ArrayList<>();
+        List<List<Integer>> resourceLessons = new ArrayList<>();
+        for (int u = 0; u < problem.units.size(); u++)
+            unitLessons.add(new ArrayList<>());
+        for (int r = 0; r < problem.resources; r++)
+            resourceLessons.add(new ArrayList<>());
+        for (int l = 0; l < problem.lessons(); l++) {
+            unitLessons.get(problem.lessonUnit[l]).add(l);
+            for (int resource : problem.unitResources[problem.lessonUnit[l]])
+                resourceLessons.get(resource).add(l);
+        }
+        problem.unitLessons = unitLessons.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        problem.resourceLessons = resourceLessons.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+    }
+
+    // Groups that share a lesson of the timetable in effect stay together. Groups without one are taught together
+    // when some room seats them all, and apart otherwise.
+    private static List<List<Group>> splits(List<Group> groups, int maxSeats) {
+        List<List<Group>> splits = new ArrayList<>();
+        List<Group> untaught = new ArrayList<>();
+        for (Group group : groups) {
+            if (group.lessons().isEmpty()) {
+                untaught.add(group);
+                continue;
+            }
+            List<Group> with = splits.stream()
+                    .filter(split -> split.stream().anyMatch(other -> !Collections.disjoint(other.lessons(), group.lessons())))
+                    .findFirst().orElse(null);
+            if (with == null)
+                splits.add(with = new ArrayList<>());
+            with.add(group);
+        }
+        long pupils = untaught.stream().flatMapToInt(group -> Arrays.stream(group.pupils())).distinct().count();
+        if (untaught.size() > 1 && pupils > maxSeats)
+            untaught.forEach(group -> splits.add(List.of(group)));
+        else if (!untaught.isEmpty() || splits.isEmpty())
+            splits.add(untaught);
+        return splits;
+    }
+
+    private static int[] teachersFor(Problem problem, Set<Integer> qualified) {
+        int[] teachers = new int[qualified == null ? problem.teacherIds.length : qualified.size()];
+        if (qualified == null) {
+            for (int t = 0; t < teachers.length; t++)
+                teachers[t] = t;
+            return teachers;
+        }
+        int i = 0;
+        for (int teacher : qualified)
+            teachers[i++] = Arrays.binarySearch(problem.teacherIds, teacher);
+        return teachers;
+    }
+
+    // The rooms with enough seats, or the biggest ones when there are none.
+    private static int[] roomsFor(Problem problem, int size) {
+        int[] fit = new int[problem.seats.length];
+        int count = 0;
+        for (int r = 0; r < problem.seats.length; r++)
+            if (problem.seats[r] >= size)
+                fit[count++] = r;
+        if (count > 0)
+            return Arrays.copyOf(fit, count);
+        int max = Arrays.stream(problem.seats).max().orElse(0);
+        for (int r = 0; r < problem.seats.length; r++)
+            if (problem.seats[r] == max)
+                fit[count++] = r;
+        return Arrays.copyOf(fit, count);
+    }
+
+    Plan solve(Problem problem) {
+        long deadline = System.nanoTime() + budget.toNanos();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Plan>> searches = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                long seed = i;
+                searches.add(executor.submit(() -> new Search(problem, new Random(seed)).run(deadline, done)));
+            }
+            Plan best = null;
+            long iterations = 0;
+            for (Future<Plan> search : searches) {
+                Plan plan = search.get();
+                iterations += plan.iterations();
+                if (best == null || plan.conflicts() < best.conflicts()
+                        || plan.conflicts() == best.conflicts() && plan.penalty() < best.penalty())
+                    best = plan;
+            }
+            return new Plan(best.slot(), best.parity(), best.room(), best.teacher(), best.conflicts(), best.penalty(), iterations);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Writes the plan as rows that take effect on the change date: one per lesson, linked to its groups, and one
+    // without a subject for every bell a teacher of the plan had until then and does not keep, in the same room, from
+    // then on. The bells of teachers the plan gives no lessons stay as they are.
+    // Those go in first, so that the trigger against two teachers in one room compares with the new plan only.
+    int commit(Problem problem, Plan plan) {
+        return db.transaction("timetable.commit", conn -> {
+            List<Object[]> rows = new ArrayList<>();
+            List<Bell> rowBells = new ArrayList<>();
+            Map<Bell, int[]> planned = new HashMap<>();
+            for (int l = 0; l < problem.lessons(); l++) {
+                Unit unit = problem.units.get(problem.lessonUnit[l]);
+                int slot = plan.slot()[l];
+                int room = problem.roomIds[plan.room()[l]];
+                Bell bell = new Bell(problem.teacherIds[plan.teacher()[problem.lessonUnit[l]]],
+                        WEEK_DAYS.get(slot / problem.bells.length), problem.bells[slot % problem.bells.length]);
+                rows.add(new Object[]{bell.teacherId(), room, unit.subjectId(), unit.classId(),
+                        plan.parity()[l] == WEEKLY ? null : plan.parity()[l] == ODD, bell.weekDay(), bell.bellOrder()});
+                rowBells.add(bell);
+                int[] rooms = planned.computeIfAbsent(bell, b -> new int[]{FREE, FREE});
+                if (plan.parity()[l] != EVEN)
+                    rooms[0] = room;
+                if (plan.parity()[l] != ODD)
+                    rooms[1] = room;
+            }
+            Set<Integer> teaching = new HashSet<>();
+            planned.keySet().forEach(bell -> teaching.add(bell.teacherId()));
+            List<Object[]> cleared = new ArrayList<>();
+            problem.previous.forEach((bell, rooms) -> {
+                if (!teaching.contains(bell.teacherId()))
+                    return;
+                int[] kept = planned.getOrDefault(bell, new int[]{FREE, FREE});
+                boolean odd = rooms[0] != FREE && rooms[0] != kept[0];
+                boolean even = rooms[1] != FREE && rooms[1] != kept[1];
+                if (odd || even)
+                    cleared.add(new Object[]{bell.teacherId(), bell.weekDay(), bell.bellOrder(), odd && even ? null : odd});
+            });
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO schedule_history (teacher_id, week_day, bell_order, is_odd_week, change_date) " +
+                                                                  "SELECT c.teacher_id, c.week_day::week_day, c.bell_order, c.is_odd_week, ? " +
+                                                                  "FROM unnest(?, ?, ?, ?) AS c(teacher_id, week_day, bell_order, is_odd_week)")) {
+                st.setDate(1, Date.valueOf(problem.changeDate));
+                st.setArray(2, column(conn, "integer", cleared, 0));
+                st.setArray(3, column(conn, "text", cleared, 1));
+                st.setArray(4, column(conn, "integer", cleared, 2));
+                st.setArray(5, column(conn, "boolean", cleared, 3));
+                st.executeUpdate();
+            }
+
+            Map<List<Object>, Integer> ids = new HashMap<>();
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO schedule_history (teacher_id, room_id, subject_id, class_id, is_odd_week, week_day, bell_order, change_date) " +
+                                                                  "SELECT l.teacher_id, l.room_id, l.subject_id, l.class_id, l.is_odd_week, l.week_day::week_day, l.bell_order, ? " +
+                                                                  "FROM unnest(?, ?, ?, ?, ?, ?, ?) AS l(teacher_id, room_id, subject_id, class_id, is_odd_week, week_day, bell_order) " +
+                                                                  "RETURNING schedule_history_id, teacher_id, week_day::text, bell_order, is_odd_week")) {
+                st.setDate(1, Date.valueOf(problem.changeDate));
+                String[] types = {"integer", "integer", "integer", "integer", "boolean", "text", "integer"};
+                for (int c = 0; c < types.length; c++)
+                    st.setArray(c + 2, column(conn, types[c], rows, c));
+                ResultSet res = st.executeQuery();
+                while (res.next())
+                    ids.put(Arrays.asList(new Bell(res.getInt(2), res.getString(3), res.getInt(4)), res.getObject(5)), res.getInt(1));
+            }
+            // schedule_history_non_intersect_trigger drops a row silently rather than failing.
+            if (ids.size() != rows.size())
+                throw new IllegalStateException((rows.size() - ids.size()) + " lessons were rejected as taking a room that is in use.");
+
+            List<Object[]> links = new ArrayList<>();
+            for (int l = 0; l < problem.lessons(); l++) {
+                int id = ids.get(Arrays.asList(rowBells.get(l), rows.get(l)[4]));
+                for (int group : problem.units.get(problem.lessonUnit[l]).groups())
+                    links.add(new Object[]{group, id});
+            }
+            try (PreparedStatement st = conn.prepareStatement("INSERT INTO groups_to_schedule (group_id, event_in_schedule_id) SELECT * FROM unnest(?, ?)")) {
+                st.setArray(1, column(conn, "integer", links, 0));
+                st.setArray(2, column(conn, "integer", links, 1));
+                st.executeUpdate();
+            }
+            return cleared.size();
+        });
+    }
+
+    private static Array column(Connection conn, String type, List<Object[]> rows, int column) throws SQLException {
+        Object[] values = new Object[rows.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = rows.get(i)[column];
+        return conn.createArrayOf(type, values);
+    }
+
+    private static int[] ints(Connection conn, String sql, LocalDate date) throws SQLException {
+        try (PreparedStatement st = conn.prepareStatement(sql)) {
+            st.setDate(1, Date.valueOf(date));
+            ResultSet res = st.executeQuery();
+            List<Integer> values = new ArrayList<>();
+            while (res.next())
+                values.add(res.getInt(1));
+            return values.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    // One annealing run. Time is counted in half slots, a bell of a day in odd or in even weeks, and every teacher,
+    // room and resource keeps how many lessons it has in each, so a move is scored by the cells it touches only.
+    private static final class Search {
+        final Problem problem;
+        final Random random;
+        final int halves;
+        final int[] slot;
+        final int[] parity;
+        final int[] room;
+        final int[] teacher;
+        final int[] teacherLoad;
+        final int[] roomLoad;
+        final int[] resourceLoad;
+        final int[] unitDay;
+        int conflicts;
+        int penalty;
+
+        Search(Problem problem, Random random) {
+            this.problem = problem;
+            this.random = random;
+            this.halves = problem.slots * 2;
+            int lessons = problem.lessons();
+            slot = new int[lessons];
+            parity = new int[lessons];
+            room = new int[lessons];
+            teacher = new int[problem.units.size()];
+            teacherLoad = new int[problem.teacherIds.length * halves];
+            roomLoad = new int[problem.roomIds.length * halves];
+            resourceLoad = new int[problem.resources * halves];
+            unitDay = new int[problem.units.size() * WEEK_DAYS.size()];
+
+            int[] taught = new int[problem.teacherIds.length];
+            for (int u = 0; u < teacher.length; u++) {
+                int[] choices = problem.units.get(u).teachers();
+                int best = choices[random.nextInt(choices.length)];
+                for (int choice : choices)
+                    if (taught[choice] < taught[best])
+                        best = choice;
+                teacher[u] = best;
+                taught[best] += problem.unitLessons[u].length;
+            }
+            for (int l = 0; l < lessons; l++) {
+                slot[l] = random.nextInt(problem.slots);
+                parity[l] = problem.weekly[l] ? WEEKLY : ODD + random.nextInt(2);
+                int[] rooms = problem.units.get(problem.lessonUnit[l]).rooms();
+                room[l] = rooms[random.nextInt(rooms.length)];
+                place(l, 1);
+            }
+        }
+
+        long cost() {
+            return (long) conflicts * HARD + penalty;
+        }
+
+        // Cools from HOT to COLD over COOLING iterations per lesson. A round that ends with conflicts starts over from
+        // where it is, until the deadline or until another search has finished without any.
+        Plan run(long deadline, AtomicBoolean done) {
+            long horizon = COOLING * problem.lessons();
+            double temperature = HOT;
+            long best = cost();
+            Plan plan = snapshot(0);
+            long round = 0;
+            long iteration = 0;
+            while (problem.lessons() > 0) {
+                if ((++iteration & 0x3FF) == 0) {
+                    if (System.nanoTime() >= deadline)
+                        break;
+                    if (iteration - round >= horizon) {
+                        if (plan.conflicts() == 0 || done.get())
+                            break;
+                        round = iteration;
+                    }
+                    temperature = HOT * Math.pow(COLD / HOT, (double) (iteration - round) / horizon);
+                }
+                long before = cost();
+                int kind = random.nextInt(10);
+                if (kind < 6)
+                    move(pick(), before, temperature);
+                else if (kind < 8)
+                    swap(pick(), before, temperature);
+                else if (kind < 9)
+                    changeRoom(pick(), before, temperature);
+                else
+                    changeTeacher(problem.lessonUnit[pick()], before, temperature);
+                if (cost() < best) {
+                    best = cost();
+                    plan = snapshot(iteration);
+                }
+            }
+            if (plan.conflicts() == 0)
+                done.set(true);
+            return new Plan(plan.slot(), plan.parity(), plan.room(), plan.teacher(), plan.conflicts(), plan.penalty(), iteration);
+        }
+
+        // A lesson in conflict, if one of a few random picks is.
+        int pick() {
+            int l = 0;
+            for (int attempt = 0; attempt < 4; attempt++) {
+                l = random.nextInt(problem.lessons());
+                if (inConflict(l))
+                    break;
+            }
+            return l;
+        }
+
+        boolean inConflict(int l) {
+            int unit = problem.lessonUnit[l];
+            for (int half = 0; half < 2; half++) {
+                if (!covers(parity[l], half))
+                    continue;
+                int h = slot[l] * 2 + half;
+                if (teacherLoad[teacher[unit] * halves + h] > 1 || roomLoad[room[l] * halves + h] > 1)
+                    return true;
+                for (int resource : problem.unitResources[unit])
+                    if (resourceLoad[resource * halves + h] > 1)
+                        return true;
+            }
+            return false;
+        }
+
+        void move(int l, long before, double temperature) {
+            int oldSlot = slot[l];
+            int oldParity = parity[l];
+            place(l, -1);
+            slot[l] = random.nextInt(problem.slots);
+            if (!problem.weekly[l])
+                parity[l] = ODD + random.nextInt(2);
+            place(l, 1);
+            if (!accept(cost() - before, temperature)) {
+                place(l, -1);
+                slot[l] = oldSlot;
+                parity[l] = oldParity;
+                place(l, 1);
+            }
+        }
+
+        // Exchanges the bells of two lessons that share pupils, each keeping its own weeks unless both are biweekly.
+        void swap(int l, long before, double temperature) {
+            int[] cohorts = problem.unitResources[problem.lessonUnit[l]];
+            if (cohorts.length == 0)
+                return;
+            int[] sharing = problem.resourceLessons[cohorts[random.nextInt(cohorts.length)]];
+            int other = sharing[random.nextInt(sharing.length)];
+            if (other == l || slot[other] == slot[l])
+                return;
+            place(l, -1);
+            place(other, -1);
+            exchange(l, other);
+            place(l, 1);
+            place(other, 1);
+            if (!accept(cost() - before, temperature)) {
+                place(l, -1);
+                place(other, -1);
+                exchange(l, other);
+                place(l, 1);
+                place(other, 1);
+            }
+        }
+
+        private void exchange(int l, int other) {
+            int s = slot[l];
+            slot[l] = slot[other];
+            slot[other] = s;
+            if (!problem.weekly[l] && !problem.weekly[other]) {
+                int p = parity[l];
+                parity[l] = parity[other];
+                parity[other] = p;
+            }
+        }
+
+        void changeRoom(int l, long before, double temperature) {
+            int[] rooms = problem.units.get(problem.lessonUnit[l]).rooms();
+            if (rooms.length < 2)
+                return;
+            int old = room[l];
+            place(l, -1);
+            room[l] = rooms[random.nextInt(rooms.length)];
+            place(l, 1);
+            if (!accept(cost() - before, temperature)) {
+                place(l, -1);
+                room[l] = old;
+                place(l, 1);
+            }
+        }
+
+        void changeTeacher(int unit, long before, double temperature) {
+            int[] choices = problem.units.get(unit).teachers();
+            if (choices.length < 2)
+                return;
+            int old = teacher[unit];
+            for (int l : problem.unitLessons[unit])
+                place(l, -1);
+            teacher[unit] = choices[random.nextInt(choices.length)];
+            for (int l : problem.unitLessons[unit])
+                place(l, 1);
+            if (!accept(cost() - before, temperature)) {
+                for (int l : problem.unitLessons[unit])
+                    place(l, -1);
+                teacher[unit] = old;
+                for (int l : problem.unitLessons[unit])
+                    place(l, 1);
+            }
+        }
+
+        boolean accept(long delta, double temperature) {
+            return delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature);
+        }
+
+        // Adds a lesson to the loads (sign 1) or takes it out of them (sign -1), keeping conflicts and penalty current.
+        void place(int l, int sign) {
+            int unit = problem.lessonUnit[l];
+            int bell = slot[l] % problem.bells.length;
+            int day = slot[l] / problem.bells.length;
+            int weight = parity[l] == WEEKLY ? 2 : 1;
+            for (int half = 0; half < 2; half++) {
+                if (!covers(parity[l], half))
+                    continue;
+                int h = slot[l] * 2 + half;
+                conflicts += load(teacherLoad, teacher[unit] * halves + h, sign);
+                conflicts += load(roomLoad, room[l] * halves + h, sign);
+                for (int resource : problem.unitResources[unit])
+                    conflicts += load(resourceLoad, resource * halves + h, sign);
+            }
+            penalty += sign * LATE * bell * weight;
+            int cell = unit * WEEK_DAYS.size() + day;
+            int was = unitDay[cell];
+            unitDay[cell] += sign * weight;
+            penalty += REPEAT * (Math.max(0, unitDay[cell] - 2) - Math.max(0, was - 2));
+        }
+
+        private static int load(int[] loads, int cell, int sign) {
+            if (sign > 0)
+                return loads[cell]++ > 0 ? 1 : 0;
+            return --loads[cell] > 0 ? -1 : 0;
+        }
+
+        private static boolean covers(int parity, int half) {
+            return parity == WEEKLY || parity == ODD + half;
+        }
+
+        Plan snapshot(long iteration) {
+            return new Plan(slot.clone(), parity.clone(), room.clone(), teacher.clone(), conflicts, penalty, iteration);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: TimetableSolver <change date, yyyy-mm-dd>");
+            System.exit(2);
+        }
+        int threads = Integer.getInteger("school.timetable.threads", Runtime.getRuntime().availableProcessors());
+        Duration budget = Duration.ofSeconds(Long.getLong("school.timetable.seconds", 40));
+        try (ConnectionPool pool = ConnectionPool.fromSystemProperties()) {
+            Report report = new TimetableSolver(new Database(pool), threads, budget).run(LocalDate.parse(args[0]));
+            report.notes().forEach(System.out::println);
+            System.out.println(report);
+            if (report.conflicts() > 0) {
+                System.err.println("The timetable still has conflicts and was not saved.");
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -11,6 +11,8 @@ module com.example.javafxgui {
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
     requires java.sql;
+    requires java.management;
+    requires org.postgresql.jdbc;
 
     opens com.example.javafxgui to javafx.fxml;
     exports com.example.javafxgui;
@@ -0,0 +1,118 @@
+package com.example.javafxgui;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Runs against the PostgreSQL server of school.db.url in a database of its own, and is skipped without one.
+class CopyImporterTest {
+
+    static final String DATABASE = "copy_importer_test";
+    static final List<String> JOURNAL = List.of("events", "groups_to_events", "marks", "skips");
+
+    static String admin;
+    static String user;
+    static String password;
+    static ConnectionPool pool;
+
+    @BeforeAll
+    static void createDatabase() throws IOException, SQLException {
+        String server = System.getProperty("school.db.url", "jdbc:postgresql://localhost:5432/postgres");
+        admin = server.substring(0, server.lastIndexOf('/') + 1) + "postgres";
+        user = System.getProperty("school.db.user", "postgres");
+        password = System.getProperty("school.db.password", "31415");
+        try (Connection conn = DriverManager.getConnection(admin, user, password);
+             Statement st = conn.createStatement()) {
+            st.execute("DROP DATABASE IF EXISTS " + DATABASE);
+            st.execute("CREATE DATABASE " + DATABASE);
+        } catch (SQLException e) {
+            assumeTrue(false, "No PostgreSQL server to import into: " + e.getMessage());
+        }
+        String schema = SchoolDataGenerator.schemaOnly(Files.readString(Path.of("..", "create.sql")));
+        String url = admin.substring(0, admin.lastIndexOf('/') + 1) + DATABASE;
+        try (Connection conn = DriverManager.getConnection(url, user, password);
+             Statement st = conn.createStatement()) {
+            st.execute(schema);
+        }
+        pool = new ConnectionPool(url, user, password, 1, 2, 30_000);
+    }
+
+    @AfterAll
+    static void dropDatabase() throws SQLException {
+        if (pool == null)
+            return;
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(admin, user, password);
+             Statement st = conn.createStatement()) {
+            st.execute("DROP DATABASE IF EXISTS " + DATABASE);
+        }
+    }
+
+    @Test
+    void importsTheNextYearIntoADatabaseThatHasOne(@TempDir Path directory) throws IOException {
+        Path all = directory.resolve("all");
+        Path first = directory.resolve("first");
+        Path second = directory.resolve("second");
+        Map<String, Long> rows = new SchoolDataGenerator(SchoolDataGenerator.GRADES * 3, 2, 2030, 7).write(all);
+        Files.createDirectories(first);
+        Files.createDirectories(second);
+        try (var files = Files.list(all)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (JOURNAL.contains(name.substring(0, name.length() - ".csv".length())))
+                    splitByYear(file, first.resolve(name), second.resolve(name), "2031-07-01");
+                else
+                    Files.copy(file, first.resolve(name));
+            }
+        }
+        CopyImporter importer = new CopyImporter(new Database(pool));
+        importer.importDirectory(first);
+        importer.importDirectory(second);
+
+        for (String table : JOURNAL)
+            assertEquals(rows.get(table), count("SELECT COUNT(*) FROM " + table), table);
+        assertEquals(count("SELECT COUNT(*) FROM marks WHERE event_date >= '2031-07-01'"), count("SELECT COUNT(*) FROM marks_2031"));
+    }
+
+    // Sends the rows of a journal table dated before the bound to one file and the rest to the other.
+    static void splitByYear(Path source, Path before, Path after, String bound) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(source);
+             BufferedWriter earlier = Files.newBufferedWriter(before);
+             BufferedWriter later = Files.newBufferedWriter(after)) {
+            String header = in.readLine();
+            int column = Arrays.asList(header.split(",")).indexOf("event_date");
+            earlier.write(header + "\n");
+            later.write(header + "\n");
+            for (String line = in.readLine(); line != null; line = in.readLine())
+                (line.split(",")[column].compareTo(bound) < 0 ? earlier : later).write(line + "\n");
+        }
+    }
+
+    static long count(String sql) {
+        return new Database(pool).query(conn -> {
+            try (Statement st = conn.createStatement()) {
+                ResultSet res = st.executeQuery(sql);
+                res.next();
+                return res.getLong(1);
+            }
+        });
+    }
+}
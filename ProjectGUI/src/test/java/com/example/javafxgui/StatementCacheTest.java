@@ -0,0 +1,185 @@
+package com.example.javafxgui;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementCacheTest {
+
+    // Records the state pgjdbc keeps on a statement that the cache reads, resets or closes.
+    static class FakeStatement implements InvocationHandler {
+
+        final String sql;
+        int fetchSize;
+        int fetchDirection = ResultSet.FETCH_FORWARD;
+        int maxRows;
+        int maxFieldSize;
+        int queryTimeout;
+        int batch;
+        int parameters;
+        boolean closeOnCompletion;
+        boolean closed;
+
+        FakeStatement(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getFetchSize": return fetchSize;
+                case "setFetchSize": fetchSize = (int) args[0]; return null;
+                case "getFetchDirection": return fetchDirection;
+                case "setFetchDirection": fetchDirection = (int) args[0]; return null;
+                case "getMaxRows": return maxRows;
+                case "setMaxRows": maxRows = (int) args[0]; return null;
+                case "getMaxFieldSize": return maxFieldSize;
+                case "setMaxFieldSize": maxFieldSize = (int) args[0]; return null;
+                case "getQueryTimeout": return queryTimeout;
+                case "setQueryTimeout": queryTimeout = (int) args[0]; return null;
+                case "setInt": parameters++; return null;
+                case "clearParameters": parameters = 0; return null;
+                case "addBatch": batch++; return null;
+                case "clearBatch": batch = 0; return null;
+                case "closeOnCompletion": closeOnCompletion = true; return null;
+                case "isCloseOnCompletion": return closeOnCompletion;
+                case "getResultSet": return null;
+                case "isClosed": return closed;
+                case "close": closed = true; return null;
+                case "toString": return sql;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    static class FakeConnection implements InvocationHandler {
+
+        final List<FakeStatement> prepared = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    FakeStatement st = new FakeStatement((String) args[0]);
+                    prepared.add(st);
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, st);
+                case "isClosed": return closed;
+                case "close": closed = true; return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    final FakeConnection fake = new FakeConnection();
+    final StatementCache.Counters counters = new StatementCache.Counters();
+
+    Connection wrap(int capacity) {
+        Connection conn = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, fake);
+        return StatementCache.wrap(conn, capacity, counters);
+    }
+
+    @Test
+    void reusesTheStatementOfTheSameSql() throws SQLException {
+        Connection conn = wrap(4);
+        try (PreparedStatement st = conn.prepareStatement("SELECT 1")) {
+            st.setInt(1, 7);
+        }
+        try (PreparedStatement st = conn.prepareStatement("SELECT 1")) {
+            assertEquals("SELECT 1", st.toString());
+        }
+        assertEquals(1, fake.prepared.size());
+        FakeStatement st = fake.prepared.get(0);
+        assertFalse(st.closed);
+        assertEquals(0, st.parameters);
+        assertEquals(new StatementCache.Stats(1, 1, 0), counters.snapshot());
+    }
+
+    @Test
+    void givesANestedCheckoutOfTheSameSqlItsOwnStatement() throws SQLException {
+        Connection conn = wrap(4);
+        PreparedStatement outer = conn.prepareStatement("SELECT 1");
+        PreparedStatement inner = conn.prepareStatement("SELECT 1");
+        assertNotSame(outer, inner);
+        assertEquals(2, fake.prepared.size());
+
+        inner.close();
+        outer.close();
+        assertFalse(fake.prepared.get(1).closed);
+        assertTrue(fake.prepared.get(0).closed);
+        assertThrows(SQLException.class, () -> outer.setInt(1, 1));
+
+        try (PreparedStatement st = conn.prepareStatement("SELECT 1")) {
+            assertEquals(2, fake.prepared.size());
+        }
+        assertEquals(new StatementCache.Stats(1, 2, 0), counters.snapshot());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedStatement() throws SQLException {
+        Connection conn = wrap(2);
+        for (String sql : List.of("SELECT 1", "SELECT 2", "SELECT 1", "SELECT 3"))
+            conn.prepareStatement(sql).close();
+        assertEquals(3, fake.prepared.size());
+        assertFalse(fake.prepared.get(0).closed);
+        assertTrue(fake.prepared.get(1).closed);
+        assertFalse(fake.prepared.get(2).closed);
+
+        conn.prepareStatement("SELECT 2").close();
+        assertEquals(4, fake.prepared.size());
+        assertTrue(fake.prepared.get(0).closed);
+        assertEquals(new StatementCache.Stats(1, 4, 2), counters.snapshot());
+
+        conn.close();
+        assertTrue(fake.prepared.stream().allMatch(st -> st.closed));
+    }
+
+    @Test
+    void resetsWhatTheCallerChangedBeforeTheNextCheckout() throws SQLException {
+        Connection conn = wrap(4);
+        try (PreparedStatement st = conn.prepareStatement("SELECT 1")) {
+            st.setFetchSize(500);
+            st.setFetchDirection(ResultSet.FETCH_REVERSE);
+            st.setMaxRows(10);
+            st.setMaxFieldSize(64);
+            st.setQueryTimeout(30);
+            st.addBatch();
+        }
+        FakeStatement cached = fake.prepared.get(0);
+        assertFalse(cached.closed);
+        assertEquals(0, cached.fetchSize);
+        assertEquals(ResultSet.FETCH_FORWARD, cached.fetchDirection);
+        assertEquals(0, cached.maxRows);
+        assertEquals(0, cached.maxFieldSize);
+        assertEquals(0, cached.queryTimeout);
+        assertEquals(0, cached.batch);
+    }
+
+    @Test
+    void closesAStatementThatClosesItselfInsteadOfKeepingIt() throws SQLException {
+        Connection conn = wrap(4);
+        try (PreparedStatement st = conn.prepareStatement("SELECT 1")) {
+            st.closeOnCompletion();
+        }
+        assertTrue(fake.prepared.get(0).closed);
+        conn.prepareStatement("SELECT 1").close();
+        assertEquals(2, fake.prepared.size());
+        assertFalse(fake.prepared.get(1).closed);
+    }
+}
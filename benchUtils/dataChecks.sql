@@ -0,0 +1,30 @@
+-- Data checks for rules that were only enforced after the data was written. The two subject rules of
+-- schedule_history_validate_trigger replaced CHECK constraints that never fired on INSERT, so a database
+-- filled before them may hold schedule rows that an export and re-import would now reject. Run against a
+-- database created from create.sql; every check fails with the first row that breaks its rule.
+
+BEGIN;
+
+CREATE FUNCTION pg_temp.expect_none(check_name text, query text)
+    RETURNS void AS
+$$
+declare
+    failing text;
+begin
+    EXECUTE 'SELECT t::text FROM (' || query || ') t LIMIT 1' INTO failing;
+    if failing IS NOT NULL then
+        raise exception '%: % returns %', check_name, query, failing;
+    end if;
+    raise notice '%: ok', check_name;
+end;
+$$ language plpgsql;
+
+SELECT pg_temp.expect_none('mandatory lessons have a class',
+                           'SELECT h.* FROM schedule_history h JOIN subjects sub ON sub.subject_id = h.subject_id ' ||
+                           'WHERE sub.mandatory AND h.class_id IS NULL');
+SELECT pg_temp.expect_none('mandatory lessons only if in certificate',
+                           'SELECT h.* FROM schedule_history h JOIN subjects sub ON sub.subject_id = h.subject_id ' ||
+                           'WHERE sub.mandatory <> EXISTS(SELECT FROM subject_to_class_certificate c ' ||
+                           'WHERE c.subject_id = h.subject_id AND c.class_id = h.class_id)');
+
+ROLLBACK;
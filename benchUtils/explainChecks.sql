@@ -0,0 +1,103 @@
+-- Plan regression checks for the hot lookups. Every check EXPLAINs a query and fails unless the named
+-- relation is reached through an index. Set-returning helpers are inlined into the query, so their
+-- tables show up in the plan; a plpgsql helper would hide them and fail the check. Run against a
+-- database created from create.sql; the sample data is small enough that sequential scans would win
+-- on cost, so they are disabled for the duration of the script. A partitioned relation is matched by its
+-- partitions; an archived school year is added to check that date filters prune it, and the whole script
+-- is rolled back.
+
+BEGIN;
+
+SET LOCAL enable_seqscan = off;
+
+SELECT create_school_year_partitions(2020);
+
+CREATE FUNCTION pg_temp.expect_index(check_name text, query text, relation text)
+    RETURNS void AS
+$$
+declare
+    plan  jsonb;
+    nodes jsonb;
+begin
+    EXECUTE 'EXPLAIN (FORMAT JSON) ' || query INTO plan;
+    nodes = jsonb_path_query_array(plan, 'strict $.** ? (@."Relation Name" == $rel[*])',
+                                   jsonb_build_object('rel', to_jsonb(ARRAY(
+                                           SELECT relation
+                                           UNION ALL
+                                           SELECT i.inhrelid::regclass::text
+                                           FROM pg_inherits i
+                                           WHERE i.inhparent = relation::regclass))));
+    if jsonb_array_length(nodes) = 0 then
+        raise exception '%: % does not appear in the plan of %', check_name, relation, query;
+    end if;
+    if jsonb_path_exists(nodes, '$[*] ? (@."Node Type" == "Seq Scan")') then
+        raise exception '%: % is scanned sequentially in %', check_name, relation, plan;
+    end if;
+    raise notice '%: ok', check_name;
+end;
+$$ language plpgsql;
+
+CREATE FUNCTION pg_temp.expect_pruned(check_name text, query text, partition text)
+    RETURNS void AS
+$$
+declare
+    plan jsonb;
+begin
+    EXECUTE 'EXPLAIN (FORMAT JSON) ' || query INTO plan;
+    if jsonb_path_exists(plan, 'strict $.** ? (@."Relation Name" == $rel)', jsonb_build_object('rel', partition)) then
+        raise exception '%: % is not pruned from %', check_name, partition, plan;
+    end if;
+    raise notice '%: ok', check_name;
+end;
+$$ language plpgsql;
+
+SELECT pg_temp.expect_index('available groups',
+                            'SELECT g.group_id FROM "groups" g JOIN events e ON e.event_id = 10 ' ||
+                            'LEFT JOIN themes t ON t.theme_id = e.theme_id ' ||
+                            'WHERE (e.class_id IS NULL OR e.class_id = g.class_id) ' ||
+                            'AND (g.subject_id IS NULL OR g.subject_id = t.subject_id)',
+                            'events');
+SELECT pg_temp.expect_index('event with subject',
+                            'SELECT e.event_date, t.subject_id FROM events e ' ||
+                            'LEFT JOIN themes t ON t.theme_id = e.theme_id WHERE e.event_id = 10',
+                            'themes');
+SELECT pg_temp.expect_index('absent pupils',
+                            'SELECT DISTINCT pupil_id FROM skips WHERE event_id = 10 AND pupil_id = ANY (ARRAY [1, 2, 3])',
+                            'skips');
+SELECT pg_temp.expect_index('events of subject', 'SELECT * FROM get_events_of_subject(2)', 'events');
+SELECT pg_temp.expect_index('themes in quarter', 'SELECT * FROM get_themes_in_quarter(2, 1)', 'themes');
+SELECT pg_temp.expect_index('groups of event', 'SELECT * FROM get_groups_from_event(10)', 'groups_to_events');
+SELECT pg_temp.expect_index('class pupils', 'SELECT * FROM get_class_pupils(1, DATE ''2021-10-04'')', 'class_history');
+SELECT pg_temp.expect_index('certificate', 'SELECT * FROM get_certificate_for_class(1)', 'subject_to_class_certificate');
+SELECT pg_temp.expect_index('unexcused skips',
+                            'SELECT COUNT(*) FROM skip_stats WHERE pupil_id = 5 AND subject_id = 2 AND NOT excused',
+                            'excuses');
+SELECT pg_temp.expect_index('theme mark', 'SELECT mark FROM theme_marks WHERE pupil_id = 5 AND theme_id = 3',
+                            'theme_mark_totals');
+SELECT pg_temp.expect_index('bells on date', 'SELECT * FROM get_bells_schedule(DATE ''2021-10-04'')',
+                            'bell_schedule_history');
+SELECT pg_temp.expect_index('group rosters',
+                            'SELECT * FROM get_group_rosters(ARRAY [1, 5, 9], TIMESTAMP ''2021-10-04 10:00'')',
+                            'groups_history');
+SELECT pg_temp.expect_index('groups of pupil', 'SELECT * FROM get_groups_of_pupil(5, TIMESTAMP ''2021-10-04 10:00'')',
+                            'groups_history');
+SELECT pg_temp.expect_index('class of pupil',
+                            'SELECT class_id FROM class_history WHERE pupil_id = 5 ' ||
+                            'AND change_time <= TIMESTAMP ''2021-10-04 10:00'' ORDER BY change_time DESC LIMIT 1',
+                            'class_history');
+SELECT pg_temp.expect_index('lesson of teacher',
+                            'SELECT event_id FROM events WHERE event_date = DATE ''2021-10-04'' AND event_bell = 2 ' ||
+                            'AND teacher_id = 3',
+                            'events');
+SELECT pg_temp.expect_pruned('lesson of teacher in archived year',
+                             'SELECT event_id FROM events WHERE event_date = DATE ''2021-10-04'' AND event_bell = 2 ' ||
+                             'AND teacher_id = 3',
+                             'events_2020');
+SELECT pg_temp.expect_pruned('marks in archived year',
+                             'SELECT * FROM weighted_marks WHERE event_date >= DATE ''2021-09-01''',
+                             'marks_2020');
+SELECT pg_temp.expect_pruned('skips in archived year',
+                             'SELECT COUNT(*) FROM skip_stats WHERE event_date >= DATE ''2021-09-01'' AND NOT excused',
+                             'skips_2020');
+
+ROLLBACK;
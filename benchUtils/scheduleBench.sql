@@ -0,0 +1,152 @@
+-- Compares the correlated MAX(change_date) version of get_schedule(date) with the set-based one
+-- on a synthetic multi-year schedule history. Run against a database created from create.sql;
+-- everything lives in the bench schema, which is dropped at the end.
+
+DROP SCHEMA IF EXISTS bench CASCADE;
+CREATE SCHEMA bench;
+
+CREATE TABLE bench.schedule_history
+(
+    LIKE schedule_history INCLUDING DEFAULTS
+);
+
+-- 30 teachers x 7 bells x 5 week days, re-planned every 8 weeks for 6 years,
+-- with every fifth slot cancelled (subject_id IS NULL) and a third of the slots alternating by week parity.
+INSERT INTO bench.schedule_history(teacher_id, room_id, subject_id, class_id, is_odd_week, "week_day", bell_order,
+                                   change_date)
+SELECT t,
+       1 + (t + b + p) % 90,
+       CASE WHEN (t + b + d + p) % 5 = 0 THEN NULL ELSE 1 + (t + p) % 20 END,
+       1 + t % 12,
+       CASE WHEN (t + b) % 3 = 0 THEN (p % 2 = 0) END,
+       (ARRAY ['Monday', 'Tuesday', 'Wednesday', 'Thursday', 'Friday']::week_day[])[d],
+       b,
+       DATE '2016-09-01' + p * 56
+FROM generate_series(1, 30) t,
+     generate_series(1, 7) b,
+     generate_series(1, 5) d,
+     generate_series(0, 38) p;
+
+CREATE INDEX ON bench.schedule_history (change_date);
+
+ANALYZE bench.schedule_history;
+
+CREATE FUNCTION bench.get_schedule_correlated(at_date date)
+    RETURNS table
+            (
+                teacher_id integer,
+                room_id    integer,
+                bell_order integer,
+                class_id   integer,
+                subject_id integer
+            )
+AS
+$$
+begin
+    return query SELECT outer_h.teacher_id, outer_h.room_id, outer_h.bell_order, outer_h.class_id, outer_h.subject_id
+                 FROM bench.schedule_history outer_h
+                 WHERE outer_h.subject_id IS NOT NULL
+                   AND outer_h.change_date <= at_date
+                   AND outer_h.week_day = get_week_day(at_date)
+                   AND (outer_h.is_odd_week IS NULL OR is_odd_week = get_parity(at_date))
+                   AND outer_h.change_date = (SELECT MAX(inner_h.change_date)
+                                              FROM bench.schedule_history inner_h
+                                              WHERE inner_h.change_date <= at_date
+                                                AND inner_h.week_day = outer_h.week_day
+                                                AND (inner_h.is_odd_week IS NULL OR
+                                                     inner_h.is_odd_week = get_parity(at_date))
+                                                AND inner_h.teacher_id = outer_h.teacher_id
+                                                AND inner_h.bell_order = outer_h.bell_order);
+end;
+$$ language plpgsql;
+
+CREATE FUNCTION bench.get_schedule_ranked(at_date date)
+    RETURNS table
+            (
+                teacher_id integer,
+                room_id    integer,
+                bell_order integer,
+                class_id   integer,
+                subject_id integer
+            )
+AS
+$$
+declare
+    at_week_day week_day = get_week_day(at_date);
+    at_parity   boolean  = get_parity(at_date);
+begin
+    return query SELECT latest.teacher_id, latest.room_id, latest.bell_order, latest.class_id, latest.subject_id
+                 FROM (SELECT h.teacher_id,
+                              h.room_id,
+                              h.bell_order,
+                              h.class_id,
+                              h.subject_id,
+                              rank() OVER (PARTITION BY h.teacher_id, h.bell_order
+                                  ORDER BY h.change_date DESC) AS change_rank
+                       FROM bench.schedule_history h
+                       WHERE h.week_day = at_week_day
+                         AND h.change_date <= at_date
+                         AND (h.is_odd_week IS NULL OR h.is_odd_week = at_parity)) latest
+                 WHERE latest.change_rank = 1
+                   AND latest.subject_id IS NOT NULL;
+end;
+$$ language plpgsql;
+
+DO
+$$
+declare
+    days       date[] = ARRAY(SELECT d::date
+                              FROM generate_series(DATE '2017-09-04', DATE '2022-05-27', INTERVAL '61 days') d
+                              WHERE extract(isodow from d) < 6);
+    at_date    date;
+    mismatches integer = 0;
+    started    timestamp;
+    correlated interval;
+    ranked     interval;
+    indexed    interval;
+begin
+    foreach at_date in array days
+        loop
+            mismatches = mismatches + (SELECT count(*)
+                                       FROM ((SELECT * FROM bench.get_schedule_correlated(at_date)
+                                              EXCEPT ALL
+                                              SELECT * FROM bench.get_schedule_ranked(at_date))
+                                             UNION ALL
+                                             (SELECT * FROM bench.get_schedule_ranked(at_date)
+                                              EXCEPT ALL
+                                              SELECT * FROM bench.get_schedule_correlated(at_date))) diff);
+        end loop;
+    RAISE NOTICE '% dates compared, % mismatching rows', array_length(days, 1), mismatches;
+
+    started = clock_timestamp();
+    foreach at_date in array days
+        loop
+            PERFORM count(*) FROM bench.get_schedule_correlated(at_date);
+        end loop;
+    correlated = clock_timestamp() - started;
+
+    started = clock_timestamp();
+    foreach at_date in array days
+        loop
+            PERFORM count(*) FROM bench.get_schedule_ranked(at_date);
+        end loop;
+    ranked = clock_timestamp() - started;
+
+    CREATE INDEX ON bench.schedule_history (teacher_id, bell_order, "week_day", change_date DESC);
+    ANALYZE bench.schedule_history;
+
+    started = clock_timestamp();
+    foreach at_date in array days
+        loop
+            PERFORM count(*) FROM bench.get_schedule_ranked(at_date);
+        end loop;
+    indexed = clock_timestamp() - started;
+
+    RAISE NOTICE '% history rows, % calls each', (SELECT count(*) FROM bench.schedule_history), array_length(days, 1);
+    RAISE NOTICE 'correlated MAX:              %', correlated;
+    RAISE NOTICE 'window rank:                 %', ranked;
+    RAISE NOTICE 'window rank, composite index: %', indexed;
+end;
+$$;
+
+DROP SCHEMA bench CASCADE;
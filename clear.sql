@@ -1,3 +1,19 @@
+drop view if exists skip_stats cascade;
+
+drop view if exists year_marks cascade;
+
+drop view if exists quarter_marks cascade;
+
+drop view if exists theme_marks cascade;
+
+drop view if exists weighted_marks cascade;
+
+drop table if exists theme_mark_totals cascade;
+
+drop table if exists quarter_mark_totals cascade;
+
+drop table if exists year_mark_totals cascade;
+
 drop table if exists excuses cascade;
 
 drop table if exists bell_schedule_history cascade;
@@ -38,10 +54,14 @@ drop table if exists groups_to_schedule cascade;
 
 drop table if exists groups cascade;
 
+drop table if exists effective_schedule cascade;
+
 drop table if exists schedule_history cascade;
 
 drop type if exists week_day cascade;
 
+drop type if exists timerange cascade;
+
 drop table if exists rooms cascade;
 
 drop table if exists employees cascade;
@@ -94,8 +114,14 @@ drop function if exists add_to_schedule(integer, integer, integer, week_day, boo
 
 drop function if exists get_pupils_from_group(integer, timestamp) cascade;
 
+drop function if exists get_group_rosters(integer[], timestamp) cascade;
+
+drop function if exists get_event_roster(integer, integer[]) cascade;
+
 drop function if exists get_groups_from_event(integer) cascade;
 
+drop function if exists get_available_groups(integer[]) cascade;
+
 drop function if exists get_groups_of_pupil(integer, timestamp) cascade;
 
 drop function if exists delete_from_group(integer, integer, timestamp) cascade;
@@ -136,6 +162,28 @@ drop function if exists get_quarters_in_year(integer) cascade;
 
 drop function if exists get_mark_in_year(integer, integer, integer) cascade;
 
+drop function if exists get_class_pupils(integer, date) cascade;
+
+drop function if exists get_marks_in_quarter(integer, integer) cascade;
+
+drop function if exists get_marks_in_year(integer, integer) cascade;
+
+drop function if exists lock_mark_totals(integer[], integer[]) cascade;
+
+drop function if exists refresh_mark_rollups(integer[], integer[], integer[]) cascade;
+
+drop function if exists apply_mark_changes(marks[], integer) cascade;
+
+drop function if exists rebuild_mark_totals(integer[], integer[]) cascade;
+
+drop function if exists mark_totals_marks_trigger() cascade;
+
+drop function if exists mark_totals_weights_trigger() cascade;
+
+drop function if exists mark_totals_events_trigger() cascade;
+
+drop function if exists mark_totals_themes_trigger() cascade;
+
 drop function if exists get_certificate_for_class(integer) cascade;
 
 drop function if exists get_schedule_for_class(integer, date) cascade;
@@ -148,6 +196,22 @@ drop function if exists get_events_of_subject(integer) cascade;
 
 drop function if exists get_all_skips(integer, integer) cascade;
 
+drop function if exists get_skips_for_class(integer, date, date) cascade;
+
+drop function if exists raise_check_violation(text, text, text) cascade;
+
+drop function if exists excuses_validate_trigger() cascade;
+
+drop function if exists schedule_history_validate_trigger() cascade;
+
+drop function if exists events_validate_trigger() cascade;
+
+drop function if exists class_teacher_history_validate_trigger() cascade;
+
+drop function if exists skips_validate_trigger() cascade;
+
+drop function if exists marks_validate_trigger() cascade;
+
 drop function if exists bell_schedule_history_insert_trigger() cascade;
 
 drop function if exists groups_mandatory_check_f(integer, integer) cascade;
@@ -164,9 +228,7 @@ drop function if exists class_history_insert_delete_from_groups_trigger() cascad
 
 drop function if exists skips_insert_trigger() cascade;
 
-drop function if exists groups_to_events_same_subject_check_f(integer, integer) cascade;
-
-drop function if exists groups_to_events_same_class_check_f(integer, integer) cascade;
+drop function if exists groups_to_events_validate_trigger() cascade;
 
 drop function if exists groups_to_events_delete_trigger() cascade;
 
@@ -174,3 +236,17 @@ drop function if exists groups_to_schedule_same_subject_check_f(integer, integer
 
 drop function if exists groups_to_schedule_same_class_check_f(integer, integer) cascade;
 
+drop function if exists notify_changes_trigger() cascade;
+
+drop function if exists refresh_effective_schedule() cascade;
+
+drop function if exists effective_schedule_insert_trigger() cascade;
+
+drop function if exists effective_schedule_refresh_trigger() cascade;
+
+
+drop function if exists create_school_year_partitions(integer) cascade;
+
+drop function if exists quarters_partitions_trigger() cascade;
+
+drop function if exists groups_to_events_event_date_trigger() cascade;
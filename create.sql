@@ -1,7 +1,11 @@
 --type block
 
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
 CREATE TYPE week_day AS enum ('Monday', 'Tuesday', 'Wednesday', 'Thursday', 'Friday', 'Saturday', 'Sunday');
 
+CREATE TYPE timerange AS range (subtype = time);
+
 --type block end
 --table block
 
@@ -67,6 +71,7 @@ CREATE TABLE excuses
     begin_bell int,
     end_date   date                  NOT NULL,
     end_bell   int,
+    period     daterange GENERATED ALWAYS AS (daterange(begin_date, end_date, '[]')) STORED,
     excuse_id  serial,
 
     PRIMARY KEY (excuse_id)
@@ -79,6 +84,7 @@ CREATE TABLE bell_schedule_history
     end_time    time,
     change_date date DEFAULT now() NOT NULL,
     change_id   serial,
+    valid       daterange          NOT NULL,
 
     PRIMARY KEY (change_id)
 );
@@ -109,6 +115,7 @@ CREATE TABLE groups_history
     group_id   int REFERENCES "groups" NOT NULL,
     begin_time timestamp DEFAULT now() NOT NULL,
     end_time   timestamp DEFAULT NULL,
+    membership tsrange GENERATED ALWAYS AS (tsrange(begin_time, end_time)) STORED,
     change_id  serial,
 
     PRIMARY KEY (change_id)
@@ -158,6 +165,22 @@ CREATE TABLE schedule_history
     PRIMARY KEY (schedule_history_id)
 );
 
+-- Rows of schedule_history together with the dates they stay in effect. is_odd_week is the parity of
+-- the week the row is resolved for (NULL for dates outside any quarter), so rows planned for both
+-- parities appear once per parity.
+CREATE TABLE effective_schedule
+(
+    schedule_history_id integer REFERENCES schedule_history ON DELETE CASCADE NOT NULL,
+    teacher_id          integer                                               NOT NULL,
+    room_id             integer,
+    subject_id          integer,
+    class_id            integer,
+    is_odd_week         bool,
+    "week_day"          week_day                                              NOT NULL,
+    bell_order          integer                                               NOT NULL,
+    valid               daterange                                             NOT NULL
+);
+
 CREATE TABLE events
 (
     room_id    integer REFERENCES rooms,
@@ -170,8 +193,8 @@ CREATE TABLE events
 
     UNIQUE (teacher_id, event_date, event_bell),
     UNIQUE (room_id, event_date, event_bell),
-    PRIMARY KEY (event_id)
-);
+    PRIMARY KEY (event_id, event_date)
+) PARTITION BY RANGE (event_date);
 
 CREATE TABLE mark_types
 (
@@ -190,15 +213,58 @@ CREATE TABLE type_weights_history
     PRIMARY KEY (type_id, change_date)
 );
 
+-- events, marks and skips are partitioned by school year (July to July, see create_school_year_partitions),
+-- so marks and skips carry the date of their event.
 CREATE TABLE marks
 (
-    pupil_id integer REFERENCES pupils     NOT NULL,
-    event_id integer REFERENCES events     NOT NULL,
-    mark     integer                       NOT NULL,
-    type_id  integer REFERENCES mark_types NOT NULL,
-    mark_id  serial,
+    pupil_id   integer REFERENCES pupils     NOT NULL,
+    event_id   integer                       NOT NULL,
+    event_date date                          NOT NULL,
+    mark       integer                       NOT NULL,
+    type_id    integer REFERENCES mark_types NOT NULL,
+    mark_id    serial,
+
+    FOREIGN KEY (event_id, event_date) REFERENCES events ON UPDATE CASCADE,
+    UNIQUE (pupil_id, event_id, event_date),
+    PRIMARY KEY (mark_id, event_date)
+) PARTITION BY RANGE (event_date);
+
+-- Running totals behind theme_marks, quarter_marks and year_marks, kept up to date by the triggers on
+-- marks, events and type_weights_history.
+CREATE TABLE theme_mark_totals
+(
+    pupil_id     integer NOT NULL,
+    theme_id     integer NOT NULL,
+    subject_id   integer NOT NULL,
+    quarter_id   integer NOT NULL,
+    marks        integer NOT NULL,
+    weighted_sum numeric NOT NULL,
+    weight_sum   numeric NOT NULL,
+
+    PRIMARY KEY (pupil_id, theme_id)
+);
+
+CREATE TABLE quarter_mark_totals
+(
+    pupil_id   integer NOT NULL,
+    subject_id integer NOT NULL,
+    quarter_id integer NOT NULL,
+    year       integer NOT NULL,
+    mark_sum   numeric NOT NULL,
+    themes     integer NOT NULL,
+
+    PRIMARY KEY (pupil_id, subject_id, quarter_id)
+);
+
+CREATE TABLE year_mark_totals
+(
+    pupil_id   integer NOT NULL,
+    subject_id integer NOT NULL,
+    year       integer NOT NULL,
+    mark_sum   numeric NOT NULL,
+    quarters   integer NOT NULL,
 
-    PRIMARY KEY (mark_id)
+    PRIMARY KEY (pupil_id, subject_id, year)
 );
 
 CREATE TABLE holidays
@@ -239,18 +305,22 @@ CREATE TABLE class_teacher_history
 
 CREATE TABLE skips
 (
-    pupil_id int REFERENCES pupils NOT NULL,
-    event_id int REFERENCES events NOT NULL,
-    skip_id serial,
+    pupil_id   int REFERENCES pupils NOT NULL,
+    event_id   int                   NOT NULL,
+    event_date date                  NOT NULL,
+    skip_id    serial,
 
-    PRIMARY KEY (skip_id)
-);
+    FOREIGN KEY (event_id, event_date) REFERENCES events ON UPDATE CASCADE,
+    PRIMARY KEY (skip_id, event_date)
+) PARTITION BY RANGE (event_date);
 
 CREATE TABLE groups_to_events
 (
-    group_id int REFERENCES groups NOT NULL,
-    event_id int REFERENCES events NOT NULL,
+    group_id   int REFERENCES groups NOT NULL,
+    event_id   int                   NOT NULL,
+    event_date date                  NOT NULL,
 
+    FOREIGN KEY (event_id, event_date) REFERENCES events ON UPDATE CASCADE,
     PRIMARY KEY (group_id, event_id)
 );
 
@@ -277,27 +347,9 @@ CREATE TABLE subject_to_class_certificate
 CREATE FUNCTION get_week_day(at_date date = NOW()::date)
     RETURNS week_day AS
 $$
-declare
-    a integer;
-begin
-    a = extract(isodow from at_date);
-    if (a = 1) then
-        return 'Monday';
-    elseif (a = 2) then
-        return 'Tuesday';
-    elseif (a = 3) then
-        return 'Wednesday';
-    elseif (a = 4) then
-        return 'Thursday';
-    elseif (a = 5) then
-        return 'Friday';
-    elseif (a = 6) then
-        return 'Saturday';
-    else
-        return 'Sunday';
-    end if;
-end;
-$$ language plpgsql;
+SELECT (ARRAY ['Monday', 'Tuesday', 'Wednesday', 'Thursday', 'Friday', 'Saturday', 'Sunday']::week_day[])
+           [extract(isodow from at_date)];
+$$ language sql IMMUTABLE;
 
 CREATE FUNCTION has_post(employee int, post int, check_time timestamp DEFAULT now())
     RETURNS bool AS
@@ -344,120 +396,91 @@ $$ language plpgsql;
 CREATE FUNCTION study_start(pupil_id int)
     RETURNS timestamp AS
 $$
-begin
-    SELECT change_time
-    FROM class_history
-    WHERE class_history.pupil_id = study_start.pupil_id
-    ORDER BY 1
-    LIMIT 1;
-end
-$$ language plpgsql;
+SELECT (SELECT MIN(change_time)
+        FROM class_history
+        WHERE class_history.pupil_id = study_start.pupil_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION work_start(employee_id int)
     RETURNS timestamp AS
 $$
-begin
-    SELECT begin_time
-    FROM employees_history
-    WHERE employees_history.employee_id = work_start.employee_id
-    ORDER BY 1
-    LIMIT 1;
-end
-$$ language plpgsql;
+SELECT (SELECT MIN(begin_time)
+        FROM employees_history
+        WHERE employees_history.employee_id = work_start.employee_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION bell_begin_time(bell_date date, bell_order int)
     RETURNS timestamp AS
 $$
-begin
-    if (bell_order IS NULL) then
-        return bell_date;
-    end if;
-    return bell_date + (SELECT begin_time
-                        FROM bell_schedule_history
-                        WHERE change_date <= bell_date
-                          AND bell_schedule_history.bell_order = bell_begin_time.bell_order
-                        ORDER BY change_date DESC
-                        LIMIT 1);
-end
-$$ language plpgsql;
+SELECT CASE
+           WHEN bell_order IS NULL THEN bell_date::timestamp
+           ELSE bell_date + (SELECT begin_time
+                             FROM bell_schedule_history
+                             WHERE bell_schedule_history.bell_order = bell_begin_time.bell_order
+                               AND valid @> bell_date) END;
+$$ language sql STABLE;
 
 CREATE FUNCTION bell_end_time(bell_date date, bell_order int)
     RETURNS timestamp AS
 $$
-begin
-    return bell_date + (SELECT end_time
-                        FROM bell_schedule_history
-                        WHERE change_date <= bell_date
-                          AND bell_schedule_history.bell_order = bell_end_time.bell_order
-                        ORDER BY change_date DESC
-                        LIMIT 1);
-end
-$$ language plpgsql;
+SELECT bell_date + (SELECT end_time
+                    FROM bell_schedule_history
+                    WHERE bell_schedule_history.bell_order = bell_end_time.bell_order
+                      AND valid @> bell_date);
+$$ language sql STABLE;
 
 CREATE FUNCTION bell_begin_time(bell_order int)
     RETURNS timestamp AS
 $$
-begin
-    return bell_begin_time(now()::date, bell_order);
-end
-$$ language plpgsql;
+SELECT bell_begin_time(now()::date, bell_order);
+$$ language sql STABLE;
 
 CREATE FUNCTION bell_end_time(bell_order int)
     RETURNS timestamp AS
 $$
-begin
-    return bell_end_time(now()::date, bell_order);
-end
-$$ language plpgsql;
+SELECT bell_end_time(now()::date, bell_order);
+$$ language sql STABLE;
 
 CREATE FUNCTION was_at_lecture(pupil_id int, event_id int)
     RETURNS boolean AS
 $$
-begin
-    return (NOT EXISTS((SELECT skips.pupil_id
-                        FROM skips
-                        WHERE skips.pupil_id = was_at_lecture.pupil_id
-                          AND skips.event_id = was_at_lecture.event_id)));
-end
-$$ language plpgsql;
+SELECT NOT EXISTS(SELECT
+                  FROM skips
+                  WHERE skips.pupil_id = was_at_lecture.pupil_id
+                    AND skips.event_id = was_at_lecture.event_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION is_studying(pupil_id int, at_time timestamp)
     RETURNS boolean AS
 $$
-begin
-    return (SELECT class_history.class_id
-            FROM class_history
-            WHERE class_history.pupil_id = is_studying.pupil_id
-              AND class_history.change_time <= is_studying.at_time
-            ORDER BY change_time DESC
-            LIMIT 1) IS NOT NULL;
-end
-$$ language plpgsql;
+SELECT (SELECT class_history.class_id
+        FROM class_history
+        WHERE class_history.pupil_id = is_studying.pupil_id
+          AND class_history.change_time <= is_studying.at_time
+        ORDER BY change_time DESC
+        LIMIT 1) IS NOT NULL;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_class(pupil_id int, at_time timestamp)
     RETURNS integer AS
 $$
-begin
-    return (SELECT class_history.class_id
-            FROM class_history
-            WHERE class_history.pupil_id = get_class.pupil_id
-              AND class_history.change_time <= get_class.at_time
-            ORDER BY change_time DESC
-            LIMIT 1);
-end
-$$ language plpgsql;
+SELECT (SELECT class_history.class_id
+        FROM class_history
+        WHERE class_history.pupil_id = get_class.pupil_id
+          AND class_history.change_time <= get_class.at_time
+        ORDER BY change_time DESC
+        LIMIT 1);
+$$ language sql STABLE;
 
 CREATE FUNCTION is_working(employee_id int, at_time timestamp)
     RETURNS boolean AS
 $$
-begin
-    return EXISTS(SELECT *
-                  FROM employees_history
-                  WHERE employees_history.employee_id = is_working.employee_id
-                    AND employees_history.begin_time <= is_working.at_time
-                    AND (employees_history.end_time IS NULL OR employees_history.end_time >= at_time));
-end
-$$ language plpgsql;
+SELECT EXISTS(SELECT
+              FROM employees_history
+              WHERE employees_history.employee_id = is_working.employee_id
+                AND employees_history.begin_time <= is_working.at_time
+                AND (employees_history.end_time IS NULL OR employees_history.end_time >= is_working.at_time));
+$$ language sql STABLE;
 
 CREATE FUNCTION get_bells_schedule(at_date date)
     RETURNS table
@@ -468,24 +491,22 @@ CREATE FUNCTION get_bells_schedule(at_date date)
             )
 AS
 $$
-begin
-    return query
-        SELECT sch.bell_order, bell_begin_time(at_date, sch.bell_order), bell_end_time(at_date, sch.bell_order)
-        FROM bell_schedule_history sch
-        WHERE bell_begin_time(at_date, sch.bell_order) IS NOT NULL
-        GROUP BY sch.bell_order, at_date
-        ORDER BY 1;
-end;
-$$ language plpgsql;
+SELECT sch.bell_order, at_date + sch.begin_time, at_date + sch.end_time
+FROM bell_schedule_history sch
+WHERE sch.valid @> at_date
+  AND sch.begin_time IS NOT NULL
+ORDER BY 1;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_parity(at_date date)
     RETURNS boolean AS
 $$
-begin
-    return ((extract(epoch from date_trunc('week', at_date)) -
-             extract(epoch from date_trunc('week', get_quarter_begin(at_date)))) / 604800)::integer % 2 = 0;
-end;
-$$ language plpgsql;
+SELECT ((extract(epoch from date_trunc('week', at_date)) -
+         extract(epoch from date_trunc('week', (SELECT begin_date
+                                                FROM quarters
+                                                WHERE quarters.begin_date <= at_date
+                                                  AND quarters.end_date >= at_date)))) / 604800)::integer % 2 = 0;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_schedule(at_date date)
     RETURNS table
@@ -498,21 +519,53 @@ CREATE FUNCTION get_schedule(at_date date)
             )
 AS
 $$
+declare
+    at_week_day week_day = get_week_day(at_date);
+    at_parity   boolean  = get_parity(at_date);
+begin
+    return query SELECT e.teacher_id, e.room_id, e.bell_order, e.class_id, e.subject_id
+                 FROM effective_schedule e
+                 WHERE e.week_day = at_week_day
+                   AND e.valid @> at_date
+                   AND e.is_odd_week IS NOT DISTINCT FROM at_parity
+                   AND e.subject_id IS NOT NULL;
+end;
+$$ language plpgsql;
+
+CREATE FUNCTION refresh_effective_schedule()
+    RETURNS void AS
+$$
 begin
-    return query SELECT outer_h.teacher_id, outer_h.room_id, outer_h.bell_order, outer_h.subject_id
-                 FROM schedule_history outer_h
-                 WHERE outer_h.subject_id IS NOT NULL
-                   AND outer_h.change_date <= at_date
-                   AND outer_h.week_day = get_week_day(at_date)
-                   AND (outer_h.is_odd_week IS NULL OR is_odd_week = get_parity(at_date))
-                   AND outer_h.change_date = (SELECT MAX(inner_h.change_date)
-                                              FROM schedule_history inner_h
-                                              WHERE inner_h.change_date <= at_date
-                                                AND inner_h.week_day = outer_h.week_day
-                                                AND (inner_h.is_odd_week IS NULL OR
-                                                     inner_h.is_odd_week = get_parity(at_date))
-                                                AND inner_h.teacher_id = outer_h.teacher_id
-                                                AND inner_h.bell_order = outer_h.bell_order);
+    DELETE FROM effective_schedule;
+    INSERT INTO effective_schedule (schedule_history_id, teacher_id, room_id, subject_id, class_id, is_odd_week,
+                                    "week_day", bell_order, valid)
+    WITH resolved AS (SELECT h.*, parity.is_odd_week AS resolved_parity
+                      FROM schedule_history h
+                               JOIN (VALUES (True), (False), (NULL::boolean)) parity(is_odd_week)
+                                    ON h.is_odd_week IS NULL
+                                        OR h.is_odd_week = parity.is_odd_week),
+         changes AS (SELECT DISTINCT r.teacher_id, r.bell_order, r.week_day, r.resolved_parity, r.change_date
+                     FROM resolved r),
+         bounds AS (SELECT c.*,
+                           lead(c.change_date) OVER (PARTITION BY c.teacher_id, c.bell_order, c.week_day,
+                               c.resolved_parity ORDER BY c.change_date) AS next_change_date
+                    FROM changes c)
+    SELECT r.schedule_history_id,
+           r.teacher_id,
+           r.room_id,
+           r.subject_id,
+           r.class_id,
+           r.resolved_parity,
+           r.week_day,
+           r.bell_order,
+           daterange(r.change_date, b.next_change_date)
+    FROM resolved r
+             JOIN bounds b
+                  ON b.teacher_id = r.teacher_id
+                      AND b.bell_order = r.bell_order
+                      AND b.week_day = r.week_day
+                      AND b.resolved_parity IS NOT DISTINCT FROM r.resolved_parity
+                      AND b.change_date = r.change_date;
 end;
 $$ language plpgsql;
 
@@ -544,21 +597,12 @@ CREATE FUNCTION get_schedule(week_day1 week_day, is_odd_week1 boolean, last_chan
 AS
 $$
 begin
-    return query SELECT outer_h.teacher_id, outer_h.room_id, outer_h.bell_order, outer_h.subject_id
-                 FROM schedule_history outer_h
-                 WHERE outer_h.subject_id IS NOT NULL
-                   AND outer_h.change_date <= last_change_date1
-                   AND outer_h.week_day = week_day1
-                   AND (outer_h.is_odd_week IS NULL OR outer_h.is_odd_week = is_odd_week1 OR is_odd_week1 IS NULL)
-                   AND outer_h.change_date = (SELECT MAX(change_date)
-                                              FROM schedule_history inner_h
-                                              WHERE inner_h.change_date <= last_change_date1
-                                                  AND week_day1 = outer_h.week_day
-                                                  AND inner_h.is_odd_week IS NULL
-                                                 OR inner_h.is_odd_week = is_odd_week1
-                                                 OR is_odd_week1 IS NULL
-                                                  AND inner_h.teacher_id = outer_h.teacher_id
-                                                  AND inner_h.bell_order = outer_h.bell_order);
+    return query SELECT DISTINCT e.teacher_id, e.room_id, e.bell_order, e.subject_id
+                 FROM effective_schedule e
+                 WHERE e.week_day = week_day1
+                   AND e.valid @> last_change_date1
+                   AND (is_odd_week1 IS NULL OR e.is_odd_week IS NULL OR e.is_odd_week = is_odd_week1)
+                   AND e.subject_id IS NOT NULL;
 end;
 $$ language plpgsql;
 
@@ -593,14 +637,56 @@ CREATE FUNCTION get_pupils_from_group(group_id1 integer, at_time timestamp DEFAU
             )
 AS
 $$
-begin
-    return query (SELECT h.pupil_id
-                  FROM groups_history h
-                  WHERE begin_time <= at_time
-                    AND (end_time > at_time OR end_time IS NULL)
-                    AND h.group_id = group_id1);
-end;
-$$ language plpgsql;
+SELECT h.pupil_id
+FROM groups_history h
+WHERE h.group_id = group_id1
+  AND h.membership @> at_time;
+$$ language sql STABLE;
+
+CREATE FUNCTION get_group_rosters(group_ids integer[], at_time timestamp DEFAULT now())
+    RETURNS table
+            (
+                group_id integer,
+                pupil_id integer
+            )
+AS
+$$
+SELECT h.group_id, h.pupil_id
+FROM unnest(group_ids) g(group_id)
+         JOIN groups_history h ON h.group_id = g.group_id
+WHERE h.membership @> at_time;
+$$ language sql STABLE;
+
+CREATE FUNCTION get_event_roster(event_id integer, group_ids integer[])
+    RETURNS table
+            (
+                group_id   integer,
+                pupil_id   integer,
+                first_name varchar(20),
+                last_name  varchar(20),
+                absent     boolean,
+                mark       integer,
+                type_id    integer
+            )
+AS
+$$
+SELECT r.group_id,
+       p.pupil_id,
+       p.first_name,
+       p.last_name,
+       EXISTS(SELECT
+              FROM skips s
+              WHERE s.event_id = e.event_id
+                AND s.event_date = e.event_date
+                AND s.pupil_id = p.pupil_id),
+       m.mark,
+       m.type_id
+FROM events e
+         CROSS JOIN get_group_rosters(group_ids) r
+         JOIN pupils p ON p.pupil_id = r.pupil_id
+         LEFT JOIN marks m ON m.event_id = e.event_id AND m.event_date = e.event_date AND m.pupil_id = p.pupil_id
+WHERE e.event_id = get_event_roster.event_id;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_groups_from_event(event_id1 integer)
     RETURNS table
@@ -609,12 +695,36 @@ CREATE FUNCTION get_groups_from_event(event_id1 integer)
             )
 AS
 $$
-begin
-    return query (SELECT groups_to_events.group_id
-                  FROM groups_to_events
-                  WHERE groups_to_events.event_id = event_id1);
-end;
-$$ language plpgsql;
+SELECT groups_to_events.group_id
+FROM groups_to_events
+WHERE groups_to_events.event_id = event_id1;
+$$ language sql STABLE;
+
+-- Groups that may be added to each event: same subject or subject-less, same class unless the event has none.
+-- An event without such groups comes back once with a null group_id.
+CREATE FUNCTION get_available_groups(event_ids integer[])
+    RETURNS table
+            (
+                event_id integer,
+                group_id integer
+            )
+AS
+$$
+SELECT e.event_id, g.group_id
+FROM unnest(event_ids) u(event_id)
+         JOIN events e ON e.event_id = u.event_id
+         LEFT JOIN themes t ON t.theme_id = e.theme_id
+         LEFT JOIN LATERAL (SELECT groups.group_id
+                            FROM "groups"
+                            WHERE groups.subject_id = t.subject_id
+                              AND (e.class_id IS NULL OR groups.class_id = e.class_id)
+                            UNION ALL
+                            SELECT groups.group_id
+                            FROM "groups"
+                            WHERE groups.subject_id IS NULL
+                              AND (e.class_id IS NULL OR groups.class_id = e.class_id)) g ON true
+ORDER BY e.event_id, g.group_id;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_groups_of_pupil(pupil_id1 integer, at_time timestamp)
     RETURNS table
@@ -623,14 +733,11 @@ CREATE FUNCTION get_groups_of_pupil(pupil_id1 integer, at_time timestamp)
             )
 AS
 $$
-begin
-    return query (SELECT groups_history.group_id
-                  FROM groups_history
-                  WHERE begin_time <= at_time
-                    AND end_time > at_time
-                    AND groups_history.pupil_id = pupil_id1);
-end;
-$$ language plpgsql;
+SELECT groups_history.group_id
+FROM groups_history
+WHERE groups_history.pupil_id = pupil_id1
+  AND groups_history.membership @> at_time;
+$$ language sql STABLE;
 
 CREATE FUNCTION delete_from_group(pupil_id integer, group_id integer, deletion_time timestamp)
     RETURNS void
@@ -656,178 +763,347 @@ begin
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_mark_from_theme(pupil_id integer, theme_id integer)
-    RETURNS numeric(5, 3)
+CREATE VIEW weighted_marks AS
+SELECT m.pupil_id,
+       m.event_id,
+       m.event_date,
+       e.theme_id,
+       t.subject_id,
+       t.quarter_id,
+       m.mark,
+       w.weight
+FROM marks m
+         JOIN events e ON e.event_id = m.event_id AND e.event_date = m.event_date
+         JOIN themes t ON t.theme_id = e.theme_id
+         LEFT JOIN LATERAL (SELECT h.weight
+                            FROM type_weights_history h
+                            WHERE h.type_id = m.type_id
+                              AND h.change_date <= e.event_date
+                            ORDER BY h.change_date DESC
+                            LIMIT 1) w ON True;
+
+CREATE VIEW theme_marks AS
+SELECT pupil_id,
+       theme_id,
+       subject_id,
+       quarter_id,
+       (weighted_sum / NULLIF(weight_sum, 0))::numeric(5, 3) AS mark
+FROM theme_mark_totals;
+
+CREATE VIEW quarter_marks AS
+SELECT pupil_id,
+       subject_id,
+       quarter_id,
+       (mark_sum / themes)::numeric(5, 3) AS mark
+FROM quarter_mark_totals;
+
+CREATE VIEW year_marks AS
+SELECT pupil_id,
+       subject_id,
+       year,
+       (mark_sum / quarters)::numeric(5, 3) AS mark
+FROM year_mark_totals;
+
+-- Serialises the writers of the totals of one pupil in one subject, so a rollup is always recomputed from
+-- totals that no other transaction is still changing. Bulk loads lock the whole table instead, as one
+-- advisory lock per key would overflow the lock table.
+CREATE FUNCTION lock_mark_totals(pupil_ids integer[], subject_ids integer[])
+    RETURNS void
 AS
 $$
-declare
-    i record;
-    a numeric(5, 3);
-    b numeric(5, 3);
 begin
-    a := 0;
-    b := 0;
-    for i in (SELECT *
-              FROM marks
-                       NATURAL JOIN events
-                       NATURAL JOIN type_weights_history
-              WHERE events.theme_id = get_mark_from_theme.theme_id
-                AND marks.pupil_id = get_mark_from_theme.pupil_id)
-        loop
-            a := a + i.weight * i.mark;
-            b := b + i.weight;
-        end loop;
-    if b = 0 then
-        return 1;
+    if cardinality(pupil_ids) > 1000 then
+        LOCK TABLE theme_mark_totals IN SHARE ROW EXCLUSIVE MODE;
+        return;
     end if;
-    return a / b;
+    LOCK TABLE theme_mark_totals IN ROW EXCLUSIVE MODE;
+    PERFORM pg_advisory_xact_lock(k.pupil_id, k.subject_id)
+    FROM (SELECT DISTINCT c.pupil_id, c.subject_id
+          FROM unnest(pupil_ids, subject_ids) c(pupil_id, subject_id)
+          ORDER BY c.pupil_id, c.subject_id) k;
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_group_class(group_id integer)
-    RETURNS integer
+CREATE FUNCTION refresh_mark_rollups(pupil_ids integer[], subject_ids integer[], quarter_ids integer[])
+    RETURNS void
 AS
 $$
+declare
+    k_pupils   integer[];
+    k_subjects integer[];
+    k_quarters integer[];
+    k_years    integer[];
 begin
-    return (SELECT class_id FROM "groups" WHERE get_group_class.group_id = groups.group_id);
+    PERFORM lock_mark_totals(pupil_ids, subject_ids);
+
+    SELECT array_agg(k.pupil_id), array_agg(k.subject_id), array_agg(k.quarter_id)
+    INTO k_pupils, k_subjects, k_quarters
+    FROM (SELECT DISTINCT *
+          FROM unnest(pupil_ids, subject_ids, quarter_ids) c(pupil_id, subject_id, quarter_id)) k;
+
+    DELETE
+    FROM quarter_mark_totals q
+        USING unnest(k_pupils, k_subjects, k_quarters) k(pupil_id, subject_id, quarter_id)
+    WHERE q.pupil_id = k.pupil_id
+      AND q.subject_id = k.subject_id
+      AND q.quarter_id = k.quarter_id;
+
+    INSERT INTO quarter_mark_totals (pupil_id, subject_id, quarter_id, year, mark_sum, themes)
+    SELECT t.pupil_id, t.subject_id, t.quarter_id, get_quarter_year(t.quarter_id),
+           SUM((t.weighted_sum / t.weight_sum)::numeric(5, 3)), COUNT(*)
+    FROM unnest(k_pupils, k_subjects, k_quarters) k(pupil_id, subject_id, quarter_id)
+             JOIN theme_mark_totals t
+                  ON t.pupil_id = k.pupil_id
+                      AND t.subject_id = k.subject_id
+                      AND t.quarter_id = k.quarter_id
+    WHERE t.weight_sum <> 0
+    GROUP BY t.pupil_id, t.subject_id, t.quarter_id;
+
+    SELECT array_agg(k.pupil_id), array_agg(k.subject_id), array_agg(k.year)
+    INTO k_pupils, k_subjects, k_years
+    FROM (SELECT DISTINCT c.pupil_id, c.subject_id, get_quarter_year(c.quarter_id) AS year
+          FROM unnest(k_pupils, k_subjects, k_quarters) c(pupil_id, subject_id, quarter_id)) k;
+
+    DELETE
+    FROM year_mark_totals y
+        USING unnest(k_pupils, k_subjects, k_years) k(pupil_id, subject_id, year)
+    WHERE y.pupil_id = k.pupil_id
+      AND y.subject_id = k.subject_id
+      AND y.year = k.year;
+
+    INSERT INTO year_mark_totals (pupil_id, subject_id, year, mark_sum, quarters)
+    SELECT q.pupil_id, q.subject_id, q.year, SUM((q.mark_sum / q.themes)::numeric(5, 3)), COUNT(*)
+    FROM unnest(k_pupils, k_subjects, k_years) k(pupil_id, subject_id, year)
+             JOIN quarter_mark_totals q
+                  ON q.pupil_id = k.pupil_id
+                      AND q.subject_id = k.subject_id
+                      AND q.year = k.year
+    GROUP BY q.pupil_id, q.subject_id, q.year;
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_subject_of_theme(theme_id integer)
-    RETURNS integer
+-- Adds (sign = 1) or takes away (sign = -1) the given marks from the running totals.
+CREATE FUNCTION apply_mark_changes(changed marks[], sign integer)
+    RETURNS void
 AS
 $$
+declare
+    pupil_ids   integer[];
+    theme_ids   integer[];
+    subject_ids integer[];
+    quarter_ids integer[];
 begin
-    return (SELECT subject_id FROM themes WHERE themes.theme_id = get_subject_of_theme.theme_id);
+    PERFORM lock_mark_totals(array_agg(m.pupil_id), array_agg(th.subject_id))
+    FROM unnest(changed) m
+             JOIN events e ON e.event_id = m.event_id AND e.event_date = m.event_date
+             JOIN themes th ON th.theme_id = e.theme_id;
+
+    WITH delta AS (SELECT m.pupil_id,
+                          e.theme_id,
+                          th.subject_id,
+                          th.quarter_id,
+                          COUNT(*)                          AS marks,
+                          COALESCE(SUM(w.weight * m.mark), 0) AS weighted_sum,
+                          COALESCE(SUM(w.weight), 0)          AS weight_sum
+                   FROM unnest(changed) m
+                            JOIN events e ON e.event_id = m.event_id AND e.event_date = m.event_date
+                            JOIN themes th ON th.theme_id = e.theme_id
+                            LEFT JOIN LATERAL (SELECT h.weight
+                                               FROM type_weights_history h
+                                               WHERE h.type_id = m.type_id
+                                                 AND h.change_date <= e.event_date
+                                               ORDER BY h.change_date DESC
+                                               LIMIT 1) w ON True
+                   GROUP BY m.pupil_id, e.theme_id, th.subject_id, th.quarter_id),
+         upserted AS (
+             INSERT INTO theme_mark_totals AS t (pupil_id, theme_id, subject_id, quarter_id, marks, weighted_sum,
+                                                 weight_sum)
+                 SELECT pupil_id, theme_id, subject_id, quarter_id,
+                        sign * marks, sign * weighted_sum, sign * weight_sum
+                 FROM delta
+                 ON CONFLICT (pupil_id, theme_id) DO UPDATE
+                     SET marks = t.marks + EXCLUDED.marks,
+                         weighted_sum = t.weighted_sum + EXCLUDED.weighted_sum,
+                         weight_sum = t.weight_sum + EXCLUDED.weight_sum
+                 RETURNING t.pupil_id, t.theme_id, t.subject_id, t.quarter_id)
+    SELECT array_agg(pupil_id), array_agg(theme_id), array_agg(subject_id), array_agg(quarter_id)
+    INTO pupil_ids, theme_ids, subject_ids, quarter_ids
+    FROM upserted;
+
+    DELETE
+    FROM theme_mark_totals t
+        USING unnest(pupil_ids, theme_ids) k(pupil_id, theme_id)
+    WHERE t.pupil_id = k.pupil_id
+      AND t.theme_id = k.theme_id
+      AND t.marks = 0;
+
+    PERFORM refresh_mark_rollups(pupil_ids, subject_ids, quarter_ids);
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_subject_of_schedule(schedule_history_id integer)
-    RETURNS integer
+-- Recomputes the totals of the given (pupil, theme) pairs from marks, for changes that move weights or
+-- events under existing marks.
+CREATE FUNCTION rebuild_mark_totals(pupil_ids integer[], theme_ids integer[])
+    RETURNS void
 AS
 $$
+declare
+    subject_ids integer[];
+    quarter_ids integer[];
 begin
-    return (SELECT subject_id
-            FROM schedule_history
-            WHERE schedule_history.schedule_history_id = get_subject_of_schedule.schedule_history_id);
+    SELECT array_agg(th.subject_id ORDER BY k.ord), array_agg(th.quarter_id ORDER BY k.ord)
+    INTO subject_ids, quarter_ids
+    FROM unnest(theme_ids) WITH ORDINALITY k(theme_id, ord)
+             LEFT JOIN themes th ON th.theme_id = k.theme_id;
+
+    PERFORM lock_mark_totals(pupil_ids, subject_ids);
+
+    DELETE
+    FROM theme_mark_totals t
+        USING unnest(pupil_ids, theme_ids) k(pupil_id, theme_id)
+    WHERE t.pupil_id = k.pupil_id
+      AND t.theme_id = k.theme_id;
+
+    INSERT INTO theme_mark_totals (pupil_id, theme_id, subject_id, quarter_id, marks, weighted_sum, weight_sum)
+    SELECT w.pupil_id, w.theme_id, w.subject_id, w.quarter_id,
+           COUNT(*), COALESCE(SUM(w.weight * w.mark), 0), COALESCE(SUM(w.weight), 0)
+    FROM (SELECT DISTINCT * FROM unnest(pupil_ids, theme_ids) k(pupil_id, theme_id)) k
+             JOIN weighted_marks w
+                  ON w.pupil_id = k.pupil_id
+                      AND w.theme_id = k.theme_id
+    GROUP BY w.pupil_id, w.theme_id, w.subject_id, w.quarter_id;
+
+    PERFORM refresh_mark_rollups(pupil_ids, subject_ids, quarter_ids);
 end;
 $$ language plpgsql;
 
+CREATE FUNCTION get_mark_from_theme(pupil_id integer, theme_id integer)
+    RETURNS numeric(5, 3)
+AS
+$$
+SELECT (SELECT tm.mark
+        FROM theme_marks tm
+        WHERE tm.pupil_id = get_mark_from_theme.pupil_id
+          AND tm.theme_id = get_mark_from_theme.theme_id);
+$$ language sql STABLE;
+
+CREATE FUNCTION get_group_class(group_id integer)
+    RETURNS integer
+AS
+$$
+SELECT (SELECT class_id FROM "groups" WHERE groups.group_id = get_group_class.group_id);
+$$ language sql STABLE;
+
+CREATE FUNCTION get_subject_of_theme(theme_id integer)
+    RETURNS integer
+AS
+$$
+SELECT (SELECT subject_id FROM themes WHERE themes.theme_id = get_subject_of_theme.theme_id);
+$$ language sql STABLE;
+
+CREATE FUNCTION get_subject_of_schedule(schedule_history_id integer)
+    RETURNS integer
+AS
+$$
+SELECT (SELECT subject_id
+        FROM schedule_history
+        WHERE schedule_history.schedule_history_id = get_subject_of_schedule.schedule_history_id);
+$$ language sql STABLE;
+
 CREATE FUNCTION get_mandatory(subject_id integer)
     RETURNS boolean
 AS
 $$
-begin
-    return (SELECT mandatory
-            FROM subjects
-            WHERE subjects.subject_id = get_mandatory.subject_id);
-end;
-$$ language plpgsql;
+SELECT (SELECT mandatory
+        FROM subjects
+        WHERE subjects.subject_id = get_mandatory.subject_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION is_in_certificate(subject_id integer, class_id integer)
     RETURNS boolean
 AS
 $$
-begin
-    return EXISTS(SELECT *
-                  FROM subject_to_class_certificate
-                  WHERE subject_to_class_certificate.subject_id = is_in_certificate.subject_id
-                    AND subject_to_class_certificate.class_id = is_in_certificate.class_id);
-end;
-$$ language plpgsql;
+SELECT EXISTS(SELECT
+              FROM subject_to_class_certificate
+              WHERE subject_to_class_certificate.subject_id = is_in_certificate.subject_id
+                AND subject_to_class_certificate.class_id = is_in_certificate.class_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_theme_of_event(event_id integer)
     RETURNS integer
 AS
 $$
-begin
-    return (SELECT theme_id
-            FROM events
-            WHERE events.event_id = get_theme_of_event.event_id);
-end;
-$$ language plpgsql;
+SELECT (SELECT theme_id
+        FROM events
+        WHERE events.event_id = get_theme_of_event.event_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_quarter_begin(quarter_id integer)
     RETURNS date
 AS
 $$
-begin
-    return (SELECT begin_date
-            FROM quarters
-            WHERE quarters.quarter_id = get_quarter_begin.quarter_id);
-end;
-$$ language plpgsql;
+SELECT (SELECT begin_date
+        FROM quarters
+        WHERE quarters.quarter_id = get_quarter_begin.quarter_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_quarter_end(quarter_id integer)
     RETURNS date
 AS
 $$
-begin
-    return (SELECT end_date
-            FROM quarters
-            WHERE quarters.quarter_id = get_quarter_end.quarter_id);
-end;
-$$ language plpgsql;
+SELECT (SELECT end_date
+        FROM quarters
+        WHERE quarters.quarter_id = get_quarter_end.quarter_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_quarter_year(quarter_id integer)
     RETURNS integer
 AS
 $$
-begin
-    if extract(month from get_quarter_end(quarter_id)) < 7 then
-        return extract(year from get_quarter_end(quarter_id)) - 1;
-    else
-        return extract(year from get_quarter_end(quarter_id));
-    end if;
-end;
-$$ language plpgsql;
+SELECT (SELECT (extract(year from end_date) - CASE WHEN extract(month from end_date) < 7 THEN 1 ELSE 0 END)::integer
+        FROM quarters
+        WHERE quarters.quarter_id = get_quarter_year.quarter_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_quarter_order(quarter_id integer)
     RETURNS integer
 AS
 $$
-begin
-    return (SELECT COUNT(*)
-            FROM quarters
-            WHERE get_quarter_year(quarters.quarter_id) = get_quarter_year(get_quarter_order.quarter_id)
-              AND quarters.begin_date < get_quarter_begin(get_quarter_order.quarter_id)) + 1;
-end;
-$$ language plpgsql;
+SELECT (SELECT COUNT(*)::integer + 1
+        FROM quarters q
+                 JOIN quarters cur ON cur.quarter_id = get_quarter_order.quarter_id
+        WHERE q.end_date >= make_date(get_quarter_year(cur.quarter_id), 7, 1)
+          AND q.begin_date < cur.begin_date);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_now_quarter(at_date date)
     RETURNS integer
 AS
 $$
-begin
-    return (SELECT quarter_id
-            FROM quarters
-            WHERE quarters.begin_date <= at_date
-              AND quarters.end_date >= at_date);
-end;
-$$ language plpgsql;
+SELECT (SELECT quarter_id
+        FROM quarters
+        WHERE quarters.begin_date <= at_date
+          AND quarters.end_date >= at_date);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_now_holiday(at_date date)
     RETURNS integer
 AS
 $$
-begin
-    return (SELECT holidays_id
-            FROM holidays
-            WHERE holidays.begin_date <= at_date
-              AND holidays.end_date >= at_date);
-end;
-$$ language plpgsql;
+SELECT (SELECT holidays_id
+        FROM holidays
+        WHERE holidays.begin_date <= at_date
+          AND holidays.end_date >= at_date);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_quarter_of_theme(theme_id integer)
     RETURNS integer
 AS
 $$
-begin
-    return (SELECT quarter_id
-            FROM themes
-            WHERE themes.theme_id = get_quarter_of_theme.theme_id);
-end;
-$$ language plpgsql;
+SELECT (SELECT quarter_id
+        FROM themes
+        WHERE themes.theme_id = get_quarter_of_theme.theme_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_themes_in_quarter(subject_id1 integer, quarter_id1 integer)
     RETURNS table
@@ -836,84 +1112,130 @@ CREATE FUNCTION get_themes_in_quarter(subject_id1 integer, quarter_id1 integer)
             )
 AS
 $$
-begin
-    return query SELECT theme_id
-                 FROM themes
-                 WHERE themes.subject_id = subject_id1
-                   AND themes.quarter_id = quarter_id1;
-end;
-$$ language plpgsql;
+SELECT themes.theme_id
+FROM themes
+WHERE themes.subject_id = subject_id1
+  AND themes.quarter_id = quarter_id1;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_mark_in_quarter(pupil_id integer, subject_id integer, quarter_id integer)
     RETURNS numeric(5, 3)
 AS
 $$
-declare
-    a numeric(5, 3);
-    b numeric(5, 3);
-    i integer;
 begin
     if get_mandatory(subject_id) = False then
         raise exception 'Subject is not mandatory.';
     end if;
-    for i in (SELECT get_themes_in_quarter(subject_id, quarter_id))
-        loop
-            a := a + get_mark_from_theme(pupil_id, i);
-            b := b + 1;
-        end loop;
-    return a / b;
+    return (SELECT qm.mark
+            FROM quarter_marks qm
+            WHERE qm.pupil_id = get_mark_in_quarter.pupil_id
+              AND qm.subject_id = get_mark_in_quarter.subject_id
+              AND qm.quarter_id = get_mark_in_quarter.quarter_id);
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_quarters_in_year(year integer)
+CREATE FUNCTION get_class_pupils(class_id integer, at_date date)
     RETURNS table
             (
-                quarter_id integer
+                pupil_id integer
+            )
+AS
+$$
+SELECT latest.pupil_id
+FROM (SELECT DISTINCT ON (h.pupil_id) h.pupil_id, h.class_id
+      FROM class_history h
+      WHERE h.change_time < at_date + 1
+      ORDER BY h.pupil_id, h.change_time DESC) latest
+WHERE latest.class_id = get_class_pupils.class_id;
+$$ language sql STABLE;
+
+CREATE FUNCTION get_marks_in_quarter(class_id integer, quarter_id integer)
+    RETURNS table
+            (
+                pupil_id   integer,
+                subject_id integer,
+                mark       numeric(5, 3)
             )
 AS
 $$
 begin
-    return query SELECT quarter_id
-                 FROM quarters
-                 WHERE get_quarter_year(quarter_id) = year;
+    return query SELECT p.pupil_id, c.subject_id, qm.mark
+                 FROM get_class_pupils(get_marks_in_quarter.class_id,
+                                       get_quarter_end(get_marks_in_quarter.quarter_id)) p
+                          CROSS JOIN get_certificate_for_class(get_marks_in_quarter.class_id) c
+                          LEFT JOIN quarter_marks qm
+                                    ON qm.pupil_id = p.pupil_id
+                                        AND qm.subject_id = c.subject_id
+                                        AND qm.quarter_id = get_marks_in_quarter.quarter_id
+                 ORDER BY 1, 2;
 end;
 $$ language plpgsql;
 
+CREATE FUNCTION get_quarters_in_year(year integer)
+    RETURNS table
+            (
+                quarter_id integer
+            )
+AS
+$$
+SELECT quarters.quarter_id
+FROM quarters
+WHERE quarters.end_date >= make_date(get_quarters_in_year.year, 7, 1)
+  AND quarters.end_date < make_date(get_quarters_in_year.year + 1, 7, 1);
+$$ language sql STABLE;
+
 CREATE FUNCTION get_mark_in_year(pupil_id integer, subject_id integer, year integer)
     RETURNS numeric(5, 3)
 AS
 $$
-declare
-    a numeric(5, 3);
-    b numeric(5, 3);
-    i integer;
 begin
     if get_mandatory(subject_id) = False then
         raise exception 'Subject is not mandatory.';
     end if;
-    for i in (SELECT get_quarters_in_year(year))
-        loop
-            a := a + get_mark_in_quarter(pupil_id, subject_id, i);
-            b := b + 1;
-        end loop;
-    return a / b;
+    return (SELECT ym.mark
+            FROM year_marks ym
+            WHERE ym.pupil_id = get_mark_in_year.pupil_id
+              AND ym.subject_id = get_mark_in_year.subject_id
+              AND ym.year = get_mark_in_year.year);
 end;
 $$ language plpgsql;
 
-CREATE FUNCTION get_certificate_for_class(class_id1 integer)
+CREATE FUNCTION get_marks_in_year(class_id integer, year integer)
     RETURNS table
             (
-                subject_id integer
+                pupil_id   integer,
+                subject_id integer,
+                mark       numeric(5, 3)
             )
 AS
 $$
 begin
-    return query SELECT subject_id
-                 FROM subject_to_class_certificate
-                 WHERE subject_to_class_certificate.class_id = class_id1;
+    return query SELECT p.pupil_id, c.subject_id, ym.mark
+                 FROM get_class_pupils(get_marks_in_year.class_id,
+                                       (SELECT MAX(q.end_date)
+                                        FROM get_quarters_in_year(get_marks_in_year.year) y
+                                                 JOIN quarters q ON q.quarter_id = y.quarter_id)) p
+                          CROSS JOIN get_certificate_for_class(get_marks_in_year.class_id) c
+                          LEFT JOIN year_marks ym
+                                    ON ym.pupil_id = p.pupil_id
+                                        AND ym.subject_id = c.subject_id
+                                        AND ym.year = get_marks_in_year.year
+                 ORDER BY 1, 2;
 end;
 $$ language plpgsql;
 
+CREATE FUNCTION get_certificate_for_class(class_id1 integer)
+    RETURNS table
+            (
+                subject_id integer
+            )
+AS
+$$
+SELECT subject_to_class_certificate.subject_id
+FROM subject_to_class_certificate
+WHERE subject_to_class_certificate.class_id = class_id1;
+$$ language sql STABLE;
+
 CREATE FUNCTION get_schedule_for_class(class_id1 integer, at_date date)
     RETURNS table
             (
@@ -921,38 +1243,48 @@ CREATE FUNCTION get_schedule_for_class(class_id1 integer, at_date date)
             )
 AS
 $$
-begin
-    return query SELECT *
-                 FROM get_schedule(at_date) sch
-                 WHERE sch.class_id = class_id1;
-end;
-$$ language plpgsql;
+SELECT sch.subject_id
+FROM get_schedule(at_date) sch
+WHERE sch.class_id = class_id1;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_skip_date(skip_id integer)
-    RETURNS date AS
+    RETURNS date
+AS
 $$
-begin
-    return (SELECT event_date
-            FROM events
-            WHERE event_id = (SELECT event_id
-                              FROM skips
-                              WHERE skips.skip_id = get_skip_date.skip_id));
-end;
-$$ language plpgsql;
+SELECT (SELECT s.event_date
+        FROM skips s
+        WHERE s.skip_id = get_skip_date.skip_id);
+$$ language sql STABLE;
+
+-- Every skip with the subject it was made on and whether an excuse covers its lesson. A missing bell
+-- on an excuse covers the whole day.
+CREATE VIEW skip_stats AS
+SELECT s.skip_id,
+       s.pupil_id,
+       s.event_id,
+       s.event_date,
+       e.event_bell,
+       t.subject_id,
+       t.quarter_id,
+       EXISTS(SELECT
+              FROM excuses x
+              WHERE x.pupil_id = s.pupil_id
+                AND x.period @> e.event_date
+                AND (e.event_date, e.event_bell) >= (x.begin_date, COALESCE(x.begin_bell, 0))
+                AND (e.event_date, e.event_bell) <= (x.end_date, COALESCE(x.end_bell, 2147483647))) AS excused
+FROM skips s
+         JOIN events e ON e.event_id = s.event_id AND e.event_date = s.event_date
+         JOIN themes t ON t.theme_id = e.theme_id;
 
 CREATE FUNCTION is_real_skip(skip_id integer)
-    RETURNS integer AS
+    RETURNS boolean
+AS
 $$
-begin
-    return EXISTS(SELECT *
-        FROM excuses
-        WHERE pupil_id = (SELECT pupil_id
-                          FROM skips
-                          WHERE skips.skip_id = is_real_skip.skip_id)
-        AND begin_date <= get_skip_date(skip_id)
-        AND end_date >= get_skip_date(skip_id));
-end;
-$$ language plpgsql;
+SELECT (SELECT NOT ss.excused
+        FROM skip_stats ss
+        WHERE ss.skip_id = is_real_skip.skip_id);
+$$ language sql STABLE;
 
 CREATE FUNCTION get_events_of_subject(subject_id integer)
     RETURNS table
@@ -961,26 +1293,85 @@ CREATE FUNCTION get_events_of_subject(subject_id integer)
             )
 AS
 $$
-begin
-    return query SELECT event_id
-                 FROM events
-                 WHERE get_subject_of_theme(get_theme_of_event(event_id)) = subject_id;
-end;
-$$ language plpgsql;
+SELECT e.event_id
+FROM events e
+         JOIN themes t ON t.theme_id = e.theme_id
+WHERE t.subject_id = get_events_of_subject.subject_id;
+$$ language sql STABLE;
 
 CREATE FUNCTION get_all_skips(pupil_id integer, subject_id integer)
-    RETURNS integer AS
+    RETURNS integer
+AS
 $$
-begin
-    return (SELECT COUNT(*)
-                  FROM get_events_of_subject(subject_id) NATURAL JOIN skips
-                  WHERE skips.pupil_id = get_all_skips.pupil_id
-                  AND is_real_skip(skip_id));
-end;
-$$ language plpgsql;
+SELECT (SELECT COUNT(*)::integer
+        FROM skip_stats ss
+        WHERE ss.pupil_id = get_all_skips.pupil_id
+          AND ss.subject_id = get_all_skips.subject_id
+          AND NOT ss.excused);
+$$ language sql STABLE;
 
---functions block end
---checkers and triggers block
+CREATE FUNCTION get_skips_for_class(class_id integer, from_date date, to_date date)
+    RETURNS table
+            (
+                pupil_id   integer,
+                subject_id integer,
+                skips      integer,
+                excused    integer
+            )
+AS
+$$
+begin
+    return query SELECT p.pupil_id,
+                        c.subject_id,
+                        (COUNT(ss.skip_id) FILTER (WHERE NOT ss.excused))::integer,
+                        (COUNT(ss.skip_id) FILTER (WHERE ss.excused))::integer
+                 FROM get_class_pupils(get_skips_for_class.class_id, to_date) p
+                          CROSS JOIN get_certificate_for_class(get_skips_for_class.class_id) c
+                          LEFT JOIN skip_stats ss
+                                    ON ss.pupil_id = p.pupil_id
+                                        AND ss.subject_id = c.subject_id
+                                        AND ss.event_date BETWEEN from_date AND to_date
+                 GROUP BY p.pupil_id, c.subject_id
+                 ORDER BY 1, 2;
+end;
+$$ language plpgsql;
+
+-- A school year runs from the 1st of July to the 1st of July, so no quarter crosses a partition bound. Without
+-- an argument the partitions of the coming school year are created.
+CREATE FUNCTION create_school_year_partitions(year integer DEFAULT
+                                                  extract(year from current_date - interval '6 months')::integer + 1)
+    RETURNS void AS
+$$
+declare
+    t text;
+begin
+    foreach t in array ARRAY ['events', 'marks', 'skips']
+        loop
+            if to_regclass(t || '_' || year) IS NULL then
+                EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                               t || '_' || year, t, make_date(year, 7, 1), make_date(year + 1, 7, 1));
+            end if;
+        end loop;
+end;
+$$ language plpgsql;
+
+--functions block end
+--checkers and triggers block
+
+-- Raised by the statement-level validation triggers below, so a failed batch reports the same error
+-- a CHECK constraint would.
+CREATE FUNCTION raise_check_violation(relation text, constraint_name text, failing_row text)
+    RETURNS void AS
+$$
+begin
+    raise exception using
+        errcode = 'check_violation',
+        message = format('new row for relation "%s" violates check constraint "%s"', relation, constraint_name),
+        detail = format('Failing row contains %s.', failing_row),
+        table = relation,
+        constraint = constraint_name;
+end;
+$$ language plpgsql;
 
 ALTER TABLE rooms
     ADD CONSTRAINT rooms_seats_check
@@ -1012,12 +1403,53 @@ ALTER TABLE excuses
             bell_begin_time(begin_date, begin_bell) IS NOT NULL
             );
 
-ALTER TABLE excuses
-    ADD CONSTRAINT excuses_excuse_in_study_time
-        CHECK (
-                is_studying(pupil_id, bell_begin_time(begin_date, begin_bell)) AND
-                is_studying(pupil_id, bell_begin_time(end_date, end_bell))
-            );
+CREATE FUNCTION excuses_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             LEFT JOIN bell_schedule_history b
+                       ON b.bell_order = n.begin_bell AND b.valid @> n.begin_date
+             LEFT JOIN bell_schedule_history e
+                       ON e.bell_order = n.end_bell AND e.valid @> n.end_date
+    WHERE NOT (SELECT h.class_id IS NOT NULL
+               FROM class_history h
+               WHERE h.pupil_id = n.pupil_id
+                 AND h.change_time <= CASE WHEN n.begin_bell IS NULL THEN n.begin_date ELSE n.begin_date + b.begin_time END
+               ORDER BY h.change_time DESC
+               LIMIT 1) IS TRUE
+       OR NOT (SELECT h.class_id IS NOT NULL
+               FROM class_history h
+               WHERE h.pupil_id = n.pupil_id
+                 AND h.change_time <= CASE WHEN n.end_bell IS NULL THEN n.end_date ELSE n.end_date + e.begin_time END
+               ORDER BY h.change_time DESC
+               LIMIT 1) IS TRUE
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'excuses_excuse_in_study_time', failing);
+    end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER excuses_validate_insert
+    AFTER INSERT
+    ON excuses
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE excuses_validate_trigger();
+
+CREATE TRIGGER excuses_validate_update
+    AFTER UPDATE
+    ON excuses
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE excuses_validate_trigger();
 
 ALTER TABLE bell_schedule_history
     ADD CONSTRAINT bell_schedule_history_normal_length_check
@@ -1025,27 +1457,32 @@ ALTER TABLE bell_schedule_history
             begin_time < end_time
             );
 
+ALTER TABLE bell_schedule_history
+    ADD CONSTRAINT bell_schedule_history_non_intersect
+        EXCLUDE USING gist (
+        bell_order WITH <>,
+        valid WITH &&,
+        timerange(begin_time, end_time, '[]') WITH &&
+        ) WHERE (begin_time IS NOT NULL);
+
 CREATE FUNCTION bell_schedule_history_insert_trigger()
     RETURNS TRIGGER AS
 $$
-declare
-    bell_order int;
-    begin_time timestamp;
-    end_time   timestamp;
 begin
-    for bell_order, begin_time, end_time in (SELECT * FROM get_bells_schedule(NEW.change_date::date))
-        loop
-            if (bell_order != NEW.bell_order AND
-                NOT (NEW.begin_time > end_time::time OR begin_time::time > NEW.end_time)) then
-                return NULL;
-            end if;
-        end loop;
+    UPDATE bell_schedule_history
+    SET valid = daterange(lower(valid), NEW.change_date)
+    WHERE bell_order = NEW.bell_order
+      AND valid @> NEW.change_date;
+    NEW.valid = daterange(NEW.change_date, (SELECT MIN(change_date)
+                                            FROM bell_schedule_history
+                                            WHERE bell_order = NEW.bell_order
+                                              AND change_date > NEW.change_date));
     return NEW;
 end;
 $$
     LANGUAGE PLPGSQL;
 
-CREATE TRIGGER bell_schedule_history_non_intersect_trigger
+CREATE TRIGGER bell_schedule_history_validity_trigger
     BEFORE INSERT
     ON bell_schedule_history
     FOR EACH ROW
@@ -1054,18 +1491,13 @@ EXECUTE PROCEDURE bell_schedule_history_insert_trigger();
 CREATE FUNCTION groups_mandatory_check_f(class_id integer, subject_id integer)
     RETURNS boolean AS
 $$
-begin
-    return (subject_id IS NULL
-        OR (SELECT mandatory
-            FROM subjects
-            WHERE subjects.subject_id = groups_mandatory_check_f.subject_id) = False
-        OR ((SELECT mandatory
-             FROM subjects
-             WHERE subjects.subject_id = groups_mandatory_check_f.subject_id) = True
-            AND class_id IS NOT NULL));
-end;
+SELECT subject_id IS NULL
+           OR (SELECT mandatory
+               FROM subjects
+               WHERE subjects.subject_id = groups_mandatory_check_f.subject_id) = False
+           OR class_id IS NOT NULL;
 $$
-    LANGUAGE PLPGSQL;
+    LANGUAGE SQL STABLE;
 
 ALTER TABLE "groups"
     ADD CONSTRAINT groups_mandatory_check
@@ -1112,38 +1544,87 @@ ALTER TABLE schedule_history
             bell_begin_time(change_date, bell_order) IS NOT NULL
             );
 
-ALTER TABLE schedule_history
-    ADD CONSTRAINT schedule_history_if_mandatory_then_class_not_null
-        CHECK (
-                get_subject_of_schedule(schedule_history_id) IS NULL
-                OR get_mandatory(get_subject_of_schedule(schedule_history_id)) = False
-                OR
-                (get_mandatory(get_subject_of_schedule(schedule_history_id)) = True
-                    AND class_id IS NOT NULL));
+-- Unlike the CHECK constraints these rules replace, the subject is taken from the new row itself: the
+-- constraints looked it up by schedule_history_id, which does not find a row that is being inserted, so rows
+-- loaded before may break them (benchUtils/dataChecks.sql checks the stored schedule). Like the other
+-- *_validate triggers this runs once per statement; most of what a bulk insert still costs is in the per-row
+-- foreign key checks.
+CREATE FUNCTION schedule_history_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN subjects sub ON sub.subject_id = n.subject_id
+    WHERE sub.mandatory
+      AND n.class_id IS NULL
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'schedule_history_if_mandatory_then_class_not_null', failing);
+    end if;
 
-ALTER TABLE schedule_history
-    ADD CONSTRAINT schedule_history_mandatory_subjects_only_if_in_certificate
-        CHECK (
-                get_subject_of_schedule(schedule_history_id) IS NULL
-                OR
-                (get_mandatory(get_subject_of_schedule(schedule_history_id)) =
-                 is_in_certificate(get_subject_of_schedule(schedule_history_id), class_id))
-            );
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN subjects sub ON sub.subject_id = n.subject_id
+    WHERE sub.mandatory <> EXISTS(SELECT
+                                  FROM subject_to_class_certificate c
+                                  WHERE c.subject_id = n.subject_id
+                                    AND c.class_id = n.class_id)
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'schedule_history_mandatory_subjects_only_if_in_certificate',
+                                      failing);
+    end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER schedule_history_validate_insert
+    AFTER INSERT
+    ON schedule_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE schedule_history_validate_trigger();
+
+CREATE TRIGGER schedule_history_validate_update
+    AFTER UPDATE
+    ON schedule_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE schedule_history_validate_trigger();
 
 CREATE OR REPLACE FUNCTION schedule_history_insert_trigger()
     RETURNS TRIGGER AS
 $$
-declare
-    i record;
 begin
-    for i in (SELECT * FROM get_schedule(NEW.week_day, NEW.is_odd_week, NEW.change_date))
-        loop
-            if (NEW.bell_order = i.bell_order
-                AND NEW.room_id = i.room_id
-                AND NEW.teacher_id != i.teacher_id) then
-                return NULL;
-            end if;
-        end loop;
+    -- probes schedule_history itself rather than effective_schedule: the latter is only filled by after triggers,
+    -- so rows earlier in the same statement would not be seen
+    if exists(SELECT
+              FROM schedule_history h
+                       CROSS JOIN unnest(ARRAY [True, False, NULL]) AS p(parity)
+              WHERE h.room_id = NEW.room_id
+                AND h.bell_order = NEW.bell_order
+                AND h.week_day = NEW.week_day
+                AND h.change_date <= NEW.change_date
+                AND h.teacher_id != NEW.teacher_id
+                AND h.subject_id IS NOT NULL
+                AND (h.is_odd_week IS NULL OR h.is_odd_week = p.parity)
+                AND (NEW.is_odd_week IS NULL OR NEW.is_odd_week = p.parity)
+                AND NOT EXISTS(SELECT
+                               FROM schedule_history l
+                               WHERE l.teacher_id = h.teacher_id
+                                 AND l.bell_order = h.bell_order
+                                 AND l.week_day = h.week_day
+                                 AND l.change_date > h.change_date
+                                 AND l.change_date <= NEW.change_date
+                                 AND (l.is_odd_week IS NULL OR l.is_odd_week = p.parity))) then
+        return NULL;
+    end if;
     return NEW;
 end;
 $$
@@ -1155,11 +1636,112 @@ CREATE TRIGGER schedule_history_non_intersect_trigger
     FOR EACH ROW
 EXECUTE PROCEDURE schedule_history_insert_trigger();
 
-ALTER TABLE events
-    ADD CONSTRAINT events_bell_exists_check
-        CHECK (
-            bell_begin_time(event_date, event_bell) IS NOT NULL
-            );
+CREATE FUNCTION effective_schedule_insert_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    parity           boolean;
+    current_begin    date;
+    next_change_date date;
+begin
+    for parity in (SELECT unnest(CASE
+                                     WHEN NEW.is_odd_week IS NULL THEN ARRAY [True, False, NULL]
+                                     ELSE ARRAY [NEW.is_odd_week] END))
+        loop
+            SELECT lower(e.valid), upper(e.valid)
+            INTO current_begin, next_change_date
+            FROM effective_schedule e
+            WHERE e.teacher_id = NEW.teacher_id
+              AND e.bell_order = NEW.bell_order
+              AND e.week_day = NEW.week_day
+              AND e.is_odd_week IS NOT DISTINCT FROM parity
+              AND e.valid @> NEW.change_date
+            LIMIT 1;
+            if (current_begin IS NULL) then
+                next_change_date = (SELECT MIN(lower(e.valid))
+                                    FROM effective_schedule e
+                                    WHERE e.teacher_id = NEW.teacher_id
+                                      AND e.bell_order = NEW.bell_order
+                                      AND e.week_day = NEW.week_day
+                                      AND e.is_odd_week IS NOT DISTINCT FROM parity
+                                      AND lower(e.valid) > NEW.change_date);
+            elsif (current_begin < NEW.change_date) then
+                UPDATE effective_schedule e
+                SET valid = daterange(current_begin, NEW.change_date)
+                WHERE e.teacher_id = NEW.teacher_id
+                  AND e.bell_order = NEW.bell_order
+                  AND e.week_day = NEW.week_day
+                  AND e.is_odd_week IS NOT DISTINCT FROM parity
+                  AND lower(e.valid) = current_begin;
+            end if;
+            INSERT INTO effective_schedule (schedule_history_id, teacher_id, room_id, subject_id, class_id,
+                                            is_odd_week, "week_day", bell_order, valid)
+            VALUES (NEW.schedule_history_id, NEW.teacher_id, NEW.room_id, NEW.subject_id, NEW.class_id,
+                    parity, NEW.week_day, NEW.bell_order, daterange(NEW.change_date, next_change_date));
+        end loop;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER effective_schedule_on_insert
+    AFTER INSERT
+    ON schedule_history
+    FOR EACH ROW
+EXECUTE PROCEDURE effective_schedule_insert_trigger();
+
+CREATE FUNCTION effective_schedule_refresh_trigger()
+    RETURNS TRIGGER AS
+$$
+begin
+    PERFORM refresh_effective_schedule();
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER effective_schedule_on_update_delete
+    AFTER UPDATE OR DELETE
+    ON schedule_history
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE effective_schedule_refresh_trigger();
+
+CREATE FUNCTION events_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+    WHERE NOT EXISTS(SELECT
+                     FROM bell_schedule_history b
+                     WHERE b.bell_order = n.event_bell
+                       AND b.valid @> n.event_date
+                       AND b.begin_time IS NOT NULL)
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'events_bell_exists_check', failing);
+    end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER events_validate_insert
+    AFTER INSERT
+    ON events
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE events_validate_trigger();
+
+CREATE TRIGGER events_validate_update
+    AFTER UPDATE
+    ON events
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE events_validate_trigger();
 
 ALTER TABLE events
     ADD CONSTRAINT events_normal_event_date
@@ -1192,23 +1774,59 @@ ALTER TABLE events
                 (get_mandatory(get_subject_of_theme(get_theme_of_event(event_id))) = True
                     AND class_id IS NOT NULL));
 
-ALTER TABLE marks
-    ADD CONSTRAINT marks_pupil_was_at_lecture_check
-        CHECK (
-            was_at_lecture(pupil_id, event_id)
-            );
-
 ALTER TABLE marks
     ADD CONSTRAINT marks_in_boundaries
         CHECK (
             mark >= 1 AND mark <= 12
             );
 
-ALTER TABLE marks
-    ADD CONSTRAINT marks_only_in_mandatory_subjects
-        CHECK (
-                get_mandatory(get_subject_of_theme(get_theme_of_event(event_id))) = True
-            );
+CREATE FUNCTION marks_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+    WHERE EXISTS(SELECT
+                 FROM skips s
+                 WHERE s.pupil_id = n.pupil_id
+                   AND s.event_id = n.event_id
+                   AND s.event_date = n.event_date)
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'marks_pupil_was_at_lecture_check', failing);
+    end if;
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN events e ON e.event_id = n.event_id AND e.event_date = n.event_date
+             JOIN themes t ON t.theme_id = e.theme_id
+             JOIN subjects sub ON sub.subject_id = t.subject_id
+    WHERE NOT sub.mandatory
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'marks_only_in_mandatory_subjects', failing);
+    end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER marks_validate_insert
+    AFTER INSERT
+    ON marks
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE marks_validate_trigger();
+
+CREATE TRIGGER marks_validate_update
+    AFTER UPDATE
+    ON marks
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE marks_validate_trigger();
 
 CREATE FUNCTION quarters_insert_trigger()
     RETURNS TRIGGER AS
@@ -1233,6 +1851,38 @@ CREATE TRIGGER quarters_non_intersect_trigger
     FOR EACH ROW
 EXECUTE PROCEDURE quarters_insert_trigger();
 
+CREATE FUNCTION quarters_partitions_trigger()
+    RETURNS TRIGGER AS
+$$
+begin
+    PERFORM create_school_year_partitions(extract(year from NEW.begin_date - interval '6 months')::integer);
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER quarters_create_partitions
+    AFTER INSERT OR UPDATE
+    ON quarters
+    FOR EACH ROW
+EXECUTE PROCEDURE quarters_partitions_trigger();
+
+CREATE FUNCTION groups_to_events_event_date_trigger()
+    RETURNS TRIGGER AS
+$$
+begin
+    SELECT event_date INTO NEW.event_date FROM events WHERE event_id = NEW.event_id;
+    return NEW;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER groups_to_events_event_date
+    BEFORE INSERT OR UPDATE OF event_id
+    ON groups_to_events
+    FOR EACH ROW
+EXECUTE PROCEDURE groups_to_events_event_date_trigger();
+
 ALTER TABLE quarters
     ADD CONSTRAINT quarters_begin_before_end
         CHECK (
@@ -1326,42 +1976,106 @@ CREATE TRIGGER class_history_delete_from_not_that_class_groups
     FOR EACH ROW
 EXECUTE PROCEDURE class_history_insert_delete_from_groups_trigger();
 
-ALTER TABLE class_teacher_history
-    ADD CONSTRAINT class_teacher_history_class_teacher_only_at_work_time
-        CHECK (
-            is_working(teacher_id, change_time)
-            );
+CREATE FUNCTION class_teacher_history_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+    WHERE NOT EXISTS(SELECT
+                     FROM employees_history h
+                     WHERE h.employee_id = n.teacher_id
+                       AND h.begin_time <= n.change_time
+                       AND (h.end_time IS NULL OR h.end_time >= n.change_time))
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'class_teacher_history_class_teacher_only_at_work_time', failing);
+    end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER class_teacher_history_validate_insert
+    AFTER INSERT
+    ON class_teacher_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE class_teacher_history_validate_trigger();
+
+CREATE TRIGGER class_teacher_history_validate_update
+    AFTER UPDATE
+    ON class_teacher_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE class_teacher_history_validate_trigger();
 
+-- A skip is kept only for a pupil of one of the lesson's groups, either when the lesson began or now (the roster
+-- the events menu lists), so the journal of past years can be loaded after pupils moved on to other groups.
 CREATE FUNCTION skips_insert_trigger()
     RETURNS TRIGGER AS
 $$
 declare
-    i         integer;
-    should_be boolean;
+    began timestamp;
 begin
-    should_be := false;
-    for i in (SELECT get_groups_from_event(NEW.event_id))
-        loop
-            if (EXISTS(SELECT pupils.pupil_id
-                       FROM get_pupils_from_group(i, NOW()::timestamp) pupils
-                       WHERE pupils.pupil_id = NEW.pupil_id)) then
-                should_be := true;
-            end if;
-        end loop;
-    if should_be = true then
+    SELECT bell_begin_time(e.event_date, e.event_bell)
+    INTO began
+    FROM events e
+    WHERE e.event_id = NEW.event_id
+      AND e.event_date = NEW.event_date;
+    if exists(SELECT
+              FROM groups_to_events
+                       JOIN groups_history h ON h.group_id = groups_to_events.group_id
+              WHERE groups_to_events.event_id = NEW.event_id
+                AND h.pupil_id = NEW.pupil_id
+                AND (h.membership @> localtimestamp OR h.membership @> began)) then
         return NEW;
-    else
-        return NULL;
     end if;
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL
+    -- planning the lookup on the partitioned events for every row costs ten times more than running it
+    SET plan_cache_mode = force_generic_plan;
+
+CREATE FUNCTION skips_validate_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    failing text;
+begin
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN events e ON e.event_id = n.event_id AND e.event_date = n.event_date
+             JOIN themes t ON t.theme_id = e.theme_id
+             JOIN subjects sub ON sub.subject_id = t.subject_id
+    WHERE NOT sub.mandatory
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'skips_only_at_mandatory_events', failing);
+    end if;
+    return NULL;
 end;
 $$
     LANGUAGE PLPGSQL;
 
-ALTER TABLE skips
-    ADD CONSTRAINT skips_only_at_mandatory_events
-        CHECK (
-                get_mandatory(get_subject_of_theme(get_theme_of_event(event_id))) = True
-            );
+CREATE TRIGGER skips_validate_insert
+    AFTER INSERT
+    ON skips
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE skips_validate_trigger();
+
+CREATE TRIGGER skips_validate_update
+    AFTER UPDATE
+    ON skips
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE skips_validate_trigger();
 
 CREATE TRIGGER skips_pupil_from_group_on_event
     BEFORE INSERT
@@ -1369,51 +2083,51 @@ CREATE TRIGGER skips_pupil_from_group_on_event
     FOR EACH ROW
 EXECUTE PROCEDURE skips_insert_trigger();
 
-CREATE FUNCTION groups_to_events_same_subject_check_f(group_id integer, event_id integer)
-    RETURNS boolean AS
+CREATE FUNCTION groups_to_events_validate_trigger()
+    RETURNS TRIGGER AS
 $$
+declare
+    failing text;
 begin
-    return ((get_subject_of_theme((SELECT theme_id
-                                   FROM events
-                                   WHERE events.event_id = groups_to_events_same_subject_check_f.event_id)) =
-             (SELECT subject_id
-              FROM "groups"
-              WHERE groups.group_id = groups_to_events_same_subject_check_f.group_id))
-        OR (SELECT subject_id
-            FROM "groups"
-            WHERE groups.group_id = groups_to_events_same_subject_check_f.group_id) IS NULL);
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN events e ON e.event_id = n.event_id AND e.event_date = n.event_date
+             JOIN themes t ON t.theme_id = e.theme_id
+             JOIN "groups" g ON g.group_id = n.group_id
+    WHERE g.subject_id <> t.subject_id
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'groups_to_events_same_subject_check', failing);
+    end if;
+    SELECT n::text
+    INTO failing
+    FROM new_rows n
+             JOIN events e ON e.event_id = n.event_id AND e.event_date = n.event_date
+             JOIN "groups" g ON g.group_id = n.group_id
+    WHERE g.class_id <> e.class_id
+    LIMIT 1;
+    if failing IS NOT NULL then
+        PERFORM raise_check_violation(TG_TABLE_NAME, 'groups_to_events_same_class_check', failing);
+    end if;
+    return NULL;
 end;
 $$
     LANGUAGE PLPGSQL;
 
-ALTER TABLE groups_to_events
-    ADD CONSTRAINT groups_to_events_same_subject_check
-        CHECK (
-            groups_to_events_same_subject_check_f(group_id, event_id)
-            );
-
-CREATE FUNCTION groups_to_events_same_class_check_f(group_id integer, event_id integer)
-    RETURNS boolean AS
-$$
-begin
-    return (SELECT class_id
-            FROM events
-            WHERE events.event_id = groups_to_events_same_class_check_f.event_id) IS NULL
-        OR (SELECT class_id
-            FROM events
-            WHERE events.event_id = groups_to_events_same_class_check_f.event_id) =
-           (SELECT class_id
-            FROM "groups"
-            WHERE groups.group_id = groups_to_events_same_class_check_f.group_id);
-end;
-$$
-    LANGUAGE PLPGSQL;
+CREATE TRIGGER groups_to_events_validate_insert
+    AFTER INSERT
+    ON groups_to_events
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE groups_to_events_validate_trigger();
 
-ALTER TABLE groups_to_events
-    ADD CONSTRAINT groups_to_events_same_class_check
-        CHECK (
-            groups_to_events_same_class_check_f(group_id, event_id)
-            );
+CREATE TRIGGER groups_to_events_validate_update
+    AFTER UPDATE
+    ON groups_to_events
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE groups_to_events_validate_trigger();
 
 CREATE FUNCTION groups_to_events_delete_trigger()
     RETURNS TRIGGER AS
@@ -1450,21 +2164,18 @@ EXECUTE PROCEDURE groups_to_events_delete_trigger();
 CREATE FUNCTION groups_to_schedule_same_subject_check_f(group_id integer, event_in_schedule_id integer)
     RETURNS boolean AS
 $$
-begin
-    return ((SELECT subject_id
-             FROM schedule_history
-             WHERE schedule_history.schedule_history_id =
-                   groups_to_schedule_same_subject_check_f.event_in_schedule_id) =
-            (SELECT subject_id
-             FROM "groups"
-             WHERE groups.group_id = groups_to_schedule_same_subject_check_f.group_id))
-        OR
-           (SELECT subject_id
-            FROM "groups"
-            WHERE groups.group_id = groups_to_schedule_same_subject_check_f.group_id) IS NULL;
-end;
+SELECT (SELECT subject_id
+        FROM schedule_history
+        WHERE schedule_history.schedule_history_id =
+              groups_to_schedule_same_subject_check_f.event_in_schedule_id) =
+       (SELECT subject_id
+        FROM "groups"
+        WHERE groups.group_id = groups_to_schedule_same_subject_check_f.group_id)
+           OR (SELECT subject_id
+               FROM "groups"
+               WHERE groups.group_id = groups_to_schedule_same_subject_check_f.group_id) IS NULL;
 $$
-    LANGUAGE PLPGSQL;
+    LANGUAGE SQL STABLE;
 
 ALTER TABLE groups_to_schedule
     ADD CONSTRAINT groups_to_schedule_same_subject_check
@@ -1475,20 +2186,17 @@ ALTER TABLE groups_to_schedule
 CREATE FUNCTION groups_to_schedule_same_class_check_f(group_id integer, event_in_schedule_id integer)
     RETURNS boolean AS
 $$
-begin
-    return ((SELECT class_id
-             FROM schedule_history
-             WHERE schedule_history.schedule_history_id = groups_to_schedule_same_class_check_f.event_in_schedule_id) =
-            (SELECT class_id
-             FROM "groups"
-             WHERE groups.group_id = groups_to_schedule_same_class_check_f.group_id))
-        OR
-           (SELECT class_id
-            FROM "groups"
-            WHERE groups.group_id = groups_to_schedule_same_class_check_f.group_id) IS NULL;
-end;
+SELECT (SELECT class_id
+        FROM schedule_history
+        WHERE schedule_history.schedule_history_id = groups_to_schedule_same_class_check_f.event_in_schedule_id) =
+       (SELECT class_id
+        FROM "groups"
+        WHERE groups.group_id = groups_to_schedule_same_class_check_f.group_id)
+           OR (SELECT class_id
+               FROM "groups"
+               WHERE groups.group_id = groups_to_schedule_same_class_check_f.group_id) IS NULL;
 $$
-    LANGUAGE PLPGSQL;
+    LANGUAGE SQL STABLE;
 
 ALTER TABLE groups_to_schedule
     ADD CONSTRAINT groups_to_schedule_same_class_check
@@ -1496,6 +2204,384 @@ ALTER TABLE groups_to_schedule
             groups_to_schedule_same_class_check_f(group_id, event_in_schedule_id)
             );
 
+CREATE FUNCTION notify_changes_trigger()
+    RETURNS TRIGGER AS
+$$
+declare
+    ids text;
+begin
+    if TG_OP = 'INSERT' then
+        EXECUTE format('SELECT string_agg(DISTINCT %I::text, '' '') FROM new_rows', TG_ARGV[0]) INTO ids;
+    elsif TG_OP = 'UPDATE' then
+        EXECUTE format('SELECT string_agg(DISTINCT id::text, '' '') FROM (SELECT %1$I AS id FROM new_rows ' ||
+                       'UNION SELECT %1$I FROM old_rows) AS changed', TG_ARGV[0]) INTO ids;
+    else
+        EXECUTE format('SELECT string_agg(DISTINCT %I::text, '' '') FROM old_rows', TG_ARGV[0]) INTO ids;
+    end if;
+    if ids IS NULL then
+        return NULL;
+    end if;
+    if length(ids) > 7000 then
+        ids = '*';
+    end if;
+    PERFORM pg_notify('school_changes', TG_TABLE_NAME || ' ' || TG_OP || ' ' || ids);
+    return NULL;
+end;
+$$
+    LANGUAGE PLPGSQL;
+
+CREATE TRIGGER pupils_notify_insert
+    AFTER INSERT
+    ON pupils
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('pupil_id');
+
+CREATE TRIGGER pupils_notify_update
+    AFTER UPDATE
+    ON pupils
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('pupil_id');
+
+CREATE TRIGGER pupils_notify_delete
+    AFTER DELETE
+    ON pupils
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('pupil_id');
+
+CREATE TRIGGER employees_notify_insert
+    AFTER INSERT
+    ON employees
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('employee_id');
+
+CREATE TRIGGER employees_notify_update
+    AFTER UPDATE
+    ON employees
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('employee_id');
+
+CREATE TRIGGER employees_notify_delete
+    AFTER DELETE
+    ON employees
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('employee_id');
+
+CREATE TRIGGER groups_notify_insert
+    AFTER INSERT
+    ON "groups"
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('group_id');
+
+CREATE TRIGGER groups_notify_update
+    AFTER UPDATE
+    ON "groups"
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('group_id');
+
+CREATE TRIGGER groups_notify_delete
+    AFTER DELETE
+    ON "groups"
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('group_id');
+
+CREATE TRIGGER rooms_notify_insert
+    AFTER INSERT
+    ON rooms
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('room_id');
+
+CREATE TRIGGER rooms_notify_update
+    AFTER UPDATE
+    ON rooms
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('room_id');
+
+CREATE TRIGGER rooms_notify_delete
+    AFTER DELETE
+    ON rooms
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('room_id');
+
+CREATE TRIGGER themes_notify_insert
+    AFTER INSERT
+    ON themes
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('theme_id');
+
+CREATE TRIGGER themes_notify_update
+    AFTER UPDATE
+    ON themes
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('theme_id');
+
+CREATE TRIGGER themes_notify_delete
+    AFTER DELETE
+    ON themes
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('theme_id');
+
+CREATE TRIGGER events_notify_insert
+    AFTER INSERT
+    ON events
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER events_notify_update
+    AFTER UPDATE
+    ON events
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER events_notify_delete
+    AFTER DELETE
+    ON events
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER marks_notify_insert
+    AFTER INSERT
+    ON marks
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER marks_notify_update
+    AFTER UPDATE
+    ON marks
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER marks_notify_delete
+    AFTER DELETE
+    ON marks
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER skips_notify_insert
+    AFTER INSERT
+    ON skips
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER skips_notify_update
+    AFTER UPDATE
+    ON skips
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER skips_notify_delete
+    AFTER DELETE
+    ON skips
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('event_id');
+
+CREATE TRIGGER bell_schedule_history_notify_insert
+    AFTER INSERT
+    ON bell_schedule_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('bell_order');
+
+CREATE TRIGGER bell_schedule_history_notify_update
+    AFTER UPDATE
+    ON bell_schedule_history
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('bell_order');
+
+CREATE TRIGGER bell_schedule_history_notify_delete
+    AFTER DELETE
+    ON bell_schedule_history
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_changes_trigger('bell_order');
+
+CREATE FUNCTION mark_totals_marks_trigger()
+    RETURNS trigger
+AS
+$$
+begin
+    if TG_OP <> 'INSERT' then
+        PERFORM apply_mark_changes(array_agg(o::marks), -1) FROM old_rows o;
+    end if;
+    if TG_OP <> 'DELETE' then
+        PERFORM apply_mark_changes(array_agg(n::marks), 1) FROM new_rows n;
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+CREATE TRIGGER mark_totals_on_marks_insert
+    AFTER INSERT
+    ON marks
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_marks_trigger();
+
+CREATE TRIGGER mark_totals_on_marks_update
+    AFTER UPDATE
+    ON marks
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_marks_trigger();
+
+CREATE TRIGGER mark_totals_on_marks_delete
+    AFTER DELETE
+    ON marks
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_marks_trigger();
+
+CREATE FUNCTION mark_totals_weights_trigger()
+    RETURNS trigger
+AS
+$$
+declare
+    changed_types integer[];
+    pupil_ids     integer[];
+    theme_ids     integer[];
+begin
+    if TG_OP = 'INSERT' then
+        SELECT array_agg(DISTINCT type_id) INTO changed_types FROM new_rows;
+    elsif TG_OP = 'DELETE' then
+        SELECT array_agg(DISTINCT type_id) INTO changed_types FROM old_rows;
+    else
+        SELECT array_agg(DISTINCT type_id)
+        INTO changed_types
+        FROM (SELECT type_id FROM old_rows UNION SELECT type_id FROM new_rows) t;
+    end if;
+
+    SELECT array_agg(k.pupil_id), array_agg(k.theme_id)
+    INTO pupil_ids, theme_ids
+    FROM (SELECT DISTINCT m.pupil_id, e.theme_id
+          FROM marks m
+                   JOIN events e ON e.event_id = m.event_id AND e.event_date = m.event_date
+          WHERE m.type_id = ANY (changed_types)) k;
+
+    PERFORM rebuild_mark_totals(pupil_ids, theme_ids);
+    return null;
+end;
+$$ language plpgsql;
+
+CREATE TRIGGER mark_totals_on_weights_insert
+    AFTER INSERT
+    ON type_weights_history
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_weights_trigger();
+
+CREATE TRIGGER mark_totals_on_weights_update
+    AFTER UPDATE
+    ON type_weights_history
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_weights_trigger();
+
+CREATE TRIGGER mark_totals_on_weights_delete
+    AFTER DELETE
+    ON type_weights_history
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_weights_trigger();
+
+CREATE FUNCTION mark_totals_events_trigger()
+    RETURNS trigger
+AS
+$$
+declare
+    pupil_ids integer[];
+    theme_ids integer[];
+begin
+    SELECT array_agg(k.pupil_id), array_agg(k.theme_id)
+    INTO pupil_ids, theme_ids
+    FROM (SELECT m.pupil_id, o.theme_id
+          FROM old_rows o
+                   JOIN new_rows n ON n.event_id = o.event_id
+                   JOIN marks m ON m.event_id = n.event_id AND m.event_date = n.event_date
+          WHERE o.event_date <> n.event_date
+             OR o.theme_id IS DISTINCT FROM n.theme_id
+          UNION
+          SELECT m.pupil_id, n.theme_id
+          FROM old_rows o
+                   JOIN new_rows n ON n.event_id = o.event_id
+                   JOIN marks m ON m.event_id = n.event_id AND m.event_date = n.event_date
+          WHERE o.event_date <> n.event_date
+             OR o.theme_id IS DISTINCT FROM n.theme_id) k;
+
+    if pupil_ids IS NOT NULL then
+        PERFORM rebuild_mark_totals(pupil_ids, theme_ids);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+CREATE TRIGGER mark_totals_on_events_update
+    AFTER UPDATE
+    ON events
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_events_trigger();
+
+CREATE FUNCTION mark_totals_themes_trigger()
+    RETURNS trigger
+AS
+$$
+declare
+    pupil_ids   integer[];
+    theme_ids   integer[];
+    subject_ids integer[];
+    quarter_ids integer[];
+begin
+    -- theme_mark_totals still holds the subject and quarter the theme is moved away from
+    SELECT array_agg(t.pupil_id), array_agg(t.theme_id), array_agg(t.subject_id), array_agg(t.quarter_id)
+    INTO pupil_ids, theme_ids, subject_ids, quarter_ids
+    FROM old_rows o
+             JOIN new_rows n ON n.theme_id = o.theme_id
+             JOIN theme_mark_totals t ON t.theme_id = o.theme_id
+    WHERE o.subject_id <> n.subject_id
+       OR o.quarter_id <> n.quarter_id;
+
+    if pupil_ids IS NOT NULL then
+        PERFORM lock_mark_totals(pupil_ids || pupil_ids, subject_ids || array_agg(th.subject_id ORDER BY k.ord))
+        FROM unnest(theme_ids) WITH ORDINALITY k(theme_id, ord)
+                 LEFT JOIN themes th ON th.theme_id = k.theme_id;
+        PERFORM rebuild_mark_totals(pupil_ids, theme_ids);
+        PERFORM refresh_mark_rollups(pupil_ids, subject_ids, quarter_ids);
+    end if;
+    return null;
+end;
+$$ language plpgsql;
+
+CREATE TRIGGER mark_totals_on_themes_update
+    AFTER UPDATE
+    ON themes
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE mark_totals_themes_trigger();
+
 --checkers and triggers block end
 --indexes block
 
@@ -1509,20 +2595,50 @@ CREATE INDEX
     ON themes (theme_order);
 
 CREATE INDEX
-    ON excuses (begin_date, begin_bell, end_date, end_bell);
+    ON excuses USING gist (pupil_id, period);
 
 CREATE INDEX
-    ON bell_schedule_history (change_date);
+    ON skips (pupil_id, event_id);
 
 CREATE INDEX
-    ON schedule_history (change_date);
+    ON skips (event_id, event_date);
+
+CREATE INDEX
+    ON marks (event_id, event_date);
+
+CREATE INDEX
+    ON bell_schedule_history (bell_order, change_date);
+
+CREATE INDEX
+    ON bell_schedule_history USING gist (bell_order, valid);
 
 CREATE INDEX
     ON schedule_history (change_date);
 
+CREATE INDEX
+    ON schedule_history (teacher_id, bell_order, "week_day", change_date DESC);
+
+CREATE INDEX
+    ON schedule_history (room_id, bell_order, "week_day", change_date);
+
+CREATE INDEX
+    ON effective_schedule USING gist ("week_day", valid);
+
+CREATE INDEX
+    ON effective_schedule (teacher_id, bell_order, "week_day");
+
 CREATE INDEX
     ON events (event_date, event_bell);
 
+CREATE INDEX
+    ON events (theme_id);
+
+CREATE INDEX
+    ON "groups" (subject_id, class_id);
+
+CREATE INDEX
+    ON groups_to_events (event_id);
+
 CREATE INDEX
     ON type_weights_history (change_date);
 
@@ -1538,9 +2654,24 @@ CREATE INDEX
 CREATE INDEX
     ON class_history (change_time);
 
+CREATE INDEX
+    ON class_history (pupil_id, change_time) INCLUDE (class_id);
+
+CREATE INDEX
+    ON groups_history USING gist (group_id, membership);
+
+CREATE INDEX
+    ON groups_history USING gist (pupil_id, membership);
+
 CREATE INDEX
     ON class_teacher_history (change_time);
 
+CREATE INDEX
+    ON theme_mark_totals (pupil_id, subject_id, quarter_id);
+
+CREATE INDEX
+    ON quarter_mark_totals (pupil_id, subject_id, year);
+
 --indexes block end
 
 --data final block
@@ -5681,8 +6812,9 @@ values (5, 1),
        (63, 709),
        (62, 710);
 
-insert into marks (pupil_id, event_id, mark, type_id)
-values (1, 1, 5, 2),
+insert into marks (pupil_id, event_id, mark, type_id, event_date)
+select v.pupil_id, v.event_id, v.mark, v.type_id, e.event_date
+from (values (1, 1, 5, 2),
        (3, 1, 10, 4),
        (5, 1, 8, 3),
        (7, 1, 6, 2),
@@ -21466,10 +22598,12 @@ values (1, 1, 5, 2),
        (117, 709, 7, 3),
        (118, 709, 5, 3),
        (119, 709, 10, 3),
-       (120, 709, 8, 3);
+       (120, 709, 8, 3)) v(pupil_id, event_id, mark, type_id)
+         join events e on e.event_id = v.event_id;
 
-insert into skips (pupil_id, event_id)
-values (11, 3),
+insert into skips (pupil_id, event_id, event_date)
+select v.pupil_id, v.event_id, e.event_date
+from (values (11, 3),
        (23, 3),
        (15, 6),
        (28, 6),
@@ -21843,7 +22977,8 @@ values (11, 3),
        (83, 688),
        (117, 690),
        (30, 697),
-       (66, 702);
+       (66, 702)) v(pupil_id, event_id)
+         join events e on e.event_id = v.event_id;
 
 insert into excuses (pupil_id, reason, begin_date, begin_bell, end_date, end_bell)
 values (11, 'Illness', '2021-09-01', 2, '2021-09-01', 3),